@@ -0,0 +1,190 @@
+package coloring;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Heuristic search of a large clique, whose size is a lower bound on the number of colors.
+ * A greedy construction is improved by a tabu local search on the bitset adjacency view.
+ */
+public class CliqueFinder {
+
+    // The local search needs the bitset view, O(n^2 / 64) memory, so it only runs up to this number of nodes
+    private static final int BITSET_NODES_LIMIT = 1 << 14;
+    private static final int TABU_TENURE = 7;
+
+    private final Graph graph;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final Random random;
+
+    public CliqueFinder(Graph graph) {
+        this(graph, 1);
+    }
+
+    public CliqueFinder(Graph graph, long seed) {
+        this.graph = graph;
+        this.offsets = graph.getOffsets();
+        this.neighbors = graph.getNeighbors();
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Greedy clique improved by the local search
+     */
+    public int[] find(int starts, int iterations) {
+        int[] clique = greedy(starts);
+        if (graph.getNodesSize() <= BITSET_NODES_LIMIT || graph.isDense())
+            clique = localSearch(clique, iterations);
+        return clique;
+    }
+
+    /**
+     * Tabu search over cliques: add a node adjacent to the whole clique when there is one, otherwise swap in a
+     * node adjacent to all members but one (the removed member becomes tabu), or drop a random member when stuck.
+     * The nodes adjacent to all members (and to all but one) are computed by and-ing the bitset rows of the members.
+     */
+    public int[] localSearch(int[] initial, int iterations) {
+        int nodesSize = graph.getNodesSize();
+        if (initial.length == 0)
+            return initial;
+        long[][] adjacency = graph.getAdjacencyBits();
+        int words = (nodesSize + 63) >>> 6;
+
+        int[] clique = Arrays.copyOf(initial, nodesSize);
+        int cliqueSize = initial.length;
+        long[] inClique = new long[words];
+        for (int i = 0; i < cliqueSize; i++) {
+            inClique[clique[i] >>> 6] |= 1L << clique[i];
+        }
+        long[] tabuUntil = new long[nodesSize];
+        long[] missingOne = new long[words];
+        long[] missingTwo = new long[words];
+        int[] best = initial;
+
+        for (long iteration = 1; iteration <= iterations; iteration++) {
+            // missingOne: nodes not adjacent to at least one member, missingTwo: to at least two members
+            Arrays.fill(missingOne, 0);
+            Arrays.fill(missingTwo, 0);
+            for (int i = 0; i < cliqueSize; i++) {
+                long[] row = adjacency[clique[i]];
+                for (int w = 0; w < words; w++) {
+                    long missing = ~row[w];
+                    missingTwo[w] |= missingOne[w] & missing;
+                    missingOne[w] |= missing;
+                }
+            }
+
+            // Every member misses itself, so an add candidate misses nothing and a swap candidate misses one node
+            int add = pick(missingOne, null, inClique, tabuUntil, iteration, nodesSize, true);
+            if (add >= 0) {
+                clique[cliqueSize++] = add;
+                inClique[add >>> 6] |= 1L << add;
+                if (cliqueSize > best.length)
+                    best = Arrays.copyOf(clique, cliqueSize);
+                continue;
+            }
+            // Every node is tabu on a tiny graph, wait for one to be released
+            if (cliqueSize == 0)
+                continue;
+
+            int swap = pick(missingOne, missingTwo, inClique, tabuUntil, iteration, nodesSize, false);
+            int removed;
+            if (swap >= 0) {
+                removed = 0;
+                while (isAdjacent(adjacency, clique[removed], swap)) {
+                    removed++;
+                }
+            } else {
+                removed = random.nextInt(cliqueSize);
+            }
+            int node = clique[removed];
+            clique[removed] = clique[--cliqueSize];
+            inClique[node >>> 6] &= ~(1L << node);
+            tabuUntil[node] = iteration + TABU_TENURE + random.nextInt(TABU_TENURE);
+            if (swap >= 0) {
+                clique[cliqueSize++] = swap;
+                inClique[swap >>> 6] |= 1L << swap;
+            }
+        }
+        return best;
+    }
+
+    // Random non tabu node out of the clique, either missing no member (add) or exactly one member (swap)
+    private int pick(long[] missingOne, long[] missingTwo, long[] inClique, long[] tabuUntil, long iteration,
+                     int nodesSize, boolean add) {
+        int picked = -1;
+        int count = 0;
+        for (int w = 0; w < missingOne.length; w++) {
+            long candidates = (add ? ~missingOne[w] : missingOne[w] & ~missingTwo[w]) & ~inClique[w];
+            while (candidates != 0) {
+                int node = (w << 6) + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                if (node >= nodesSize || tabuUntil[node] > iteration)
+                    continue;
+                if (random.nextInt(++count) == 0)
+                    picked = node;
+            }
+        }
+        return picked;
+    }
+
+    private static boolean isAdjacent(long[][] adjacency, int u, int v) {
+        return (adjacency[u][v >>> 6] & (1L << v)) != 0;
+    }
+
+    /**
+     * Grow a clique from each of the given number of highest degree nodes, always adding the candidate with the
+     * highest degree, and return the largest one
+     */
+    public int[] greedy(int starts) {
+        int nodesSize = graph.getNodesSize();
+        if (nodesSize == 0)
+            return new int[0];
+
+        int[] order = graph.getNodesOrderedByDegree();
+        int[] best = {order[0]};
+        int[] clique = new int[graph.getMaxDegree() + 1];
+        int[] candidates = new int[graph.getMaxDegree()];
+        for (int s = 0; s < Math.min(starts, nodesSize); s++) {
+            int start = order[s];
+            // A clique through start cannot be larger than its degree + 1
+            if (graph.degree(start) < best.length)
+                break;
+
+            int cliqueSize = 0;
+            clique[cliqueSize++] = start;
+            int candidatesSize = offsets[start + 1] - offsets[start];
+            System.arraycopy(neighbors, offsets[start], candidates, 0, candidatesSize);
+
+            while (candidatesSize > 0 && cliqueSize + candidatesSize > best.length) {
+                int next = candidates[0];
+                for (int i = 1; i < candidatesSize; i++) {
+                    if (graph.degree(candidates[i]) > graph.degree(next))
+                        next = candidates[i];
+                }
+                clique[cliqueSize++] = next;
+                candidatesSize = intersect(candidates, candidatesSize, next);
+            }
+
+            if (cliqueSize > best.length)
+                best = Arrays.copyOf(clique, cliqueSize);
+        }
+        return best;
+    }
+
+    // Keep in candidates (sorted) only the neighbors of node, returns the new size
+    private int intersect(int[] candidates, int candidatesSize, int node) {
+        int size = 0;
+        int k = offsets[node];
+        int end = offsets[node + 1];
+        for (int i = 0; i < candidatesSize && k < end; i++) {
+            while (k < end && neighbors[k] < candidates[i]) {
+                k++;
+            }
+            if (k < end && neighbors[k] == candidates[i])
+                candidates[size++] = candidates[i];
+        }
+        return size;
+    }
+}
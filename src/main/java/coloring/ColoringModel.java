@@ -0,0 +1,18 @@
+package coloring;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.chocosolver.solver.Model;
+import org.chocosolver.solver.variables.IntVar;
+
+/**
+ * Choco model of the coloring problem built by SolverColoring: a color variable per node and the largest color
+ */
+@Data
+@AllArgsConstructor
+class ColoringModel {
+
+    private Model model;
+    private IntVar[] nodesColor;
+    private IntVar largestColor;
+}
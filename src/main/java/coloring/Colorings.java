@@ -0,0 +1,89 @@
+package coloring;
+
+import java.util.Arrays;
+
+/**
+ * Helpers shared by the coloring engines. A coloring is an int[] with the color of every node, colors start at 0.
+ */
+public final class Colorings {
+
+    private Colorings() {
+    }
+
+    public static int countColors(int[] colors) {
+        int max = -1;
+        for (int color : colors) {
+            max = Math.max(max, color);
+        }
+        return max + 1;
+    }
+
+    /**
+     * Coloring in the assignment output format: number of colors, optimality flag and the node colors
+     */
+    public static String format(int[] colors, boolean optimal) {
+        StringBuilder output = new StringBuilder();
+        output.append(countColors(colors)).append(optimal ? " 1" : " 0").append('\n');
+        for (int color : colors) {
+            output.append(color).append(' ');
+        }
+        return output.toString();
+    }
+
+    public static boolean isValid(Graph graph, int[] colors) {
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        for (int u = 0; u < graph.getNodesSize(); u++) {
+            if (colors[u] < 0)
+                return false;
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                if (colors[neighbors[k]] == colors[u])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rename the colors by order of first appearance along the given node order, so that every node uses at most
+     * one color more than the nodes before it (the symmetry breaking of the CP model)
+     */
+    public static int[] relabel(int[] colors, int[] order) {
+        int[] names = new int[countColors(colors)];
+        Arrays.fill(names, -1);
+        int next = 0;
+        int[] relabeled = new int[colors.length];
+        for (int u : order) {
+            if (names[colors[u]] < 0)
+                names[colors[u]] = next++;
+            relabeled[u] = names[colors[u]];
+        }
+        return relabeled;
+    }
+
+    /**
+     * Color the nodes in the given order with the smallest color not used by a colored neighbor
+     */
+    public static int[] greedy(Graph graph, int[] order) {
+        int nodesSize = graph.getNodesSize();
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        int[] colors = new int[nodesSize];
+        Arrays.fill(colors, -1);
+        // used[c] == u + 1 when color c is taken by a neighbor of u
+        int[] used = new int[graph.getMaxDegree() + 2];
+        for (int u : order) {
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int c = colors[neighbors[k]];
+                if (c >= 0)
+                    used[c] = u + 1;
+            }
+            int color = 0;
+            while (used[color] == u + 1) {
+                color++;
+            }
+            colors[u] = color;
+        }
+        return colors;
+    }
+}
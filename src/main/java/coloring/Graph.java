@@ -0,0 +1,157 @@
+package coloring;
+
+import java.util.Arrays;
+
+/**
+ * Undirected graph in compressed sparse row (CSR) form: the neighbors of node i are
+ * neighbors[offsets[i]] .. neighbors[offsets[i + 1] - 1], sorted in increasing order.
+ * Memory is O(V + E); a bitset adjacency view can be built on demand for dense graphs.
+ */
+public final class Graph {
+
+    private final int nodesSize;
+    private final int edgesSize;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private volatile long[][] adjacencyBits;
+
+    private Graph(int nodesSize, int[] offsets, int[] neighbors) {
+        this.nodesSize = nodesSize;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.edgesSize = offsets[nodesSize] / 2;
+    }
+
+    /**
+     * Build the graph from an edge list, ignoring self loops and duplicated edges
+     */
+    public static Graph fromEdges(int nodesSize, int edgesSize, int[] from, int[] to) {
+        int[] degree = new int[nodesSize];
+        for (int e = 0; e < edgesSize; e++) {
+            if (from[e] != to[e]) {
+                degree[from[e]]++;
+                degree[to[e]]++;
+            }
+        }
+
+        int[] offsets = new int[nodesSize + 1];
+        for (int i = 0; i < nodesSize; i++) {
+            offsets[i + 1] = offsets[i] + degree[i];
+        }
+        int[] neighbors = new int[offsets[nodesSize]];
+        int[] next = Arrays.copyOf(offsets, nodesSize);
+        for (int e = 0; e < edgesSize; e++) {
+            if (from[e] != to[e]) {
+                neighbors[next[from[e]]++] = to[e];
+                neighbors[next[to[e]]++] = from[e];
+            }
+        }
+
+        // Sort every adjacency list and compact the duplicated edges
+        int size = 0;
+        int start = 0;
+        for (int i = 0; i < nodesSize; i++) {
+            int end = offsets[i + 1];
+            Arrays.sort(neighbors, start, end);
+            offsets[i] = size;
+            for (int k = start; k < end; k++) {
+                if (k == start || neighbors[k] != neighbors[k - 1])
+                    neighbors[size++] = neighbors[k];
+            }
+            start = end;
+        }
+        offsets[nodesSize] = size;
+
+        return new Graph(nodesSize, offsets, size == neighbors.length ? neighbors : Arrays.copyOf(neighbors, size));
+    }
+
+    public int getNodesSize() {
+        return nodesSize;
+    }
+
+    public int getEdgesSize() {
+        return edgesSize;
+    }
+
+    /**
+     * Raw CSR offsets, to be read (never written) by the hot loops of the coloring engines
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Raw CSR neighbors, to be read (never written) by the hot loops of the coloring engines
+     */
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+
+    public int degree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    public int getMaxDegree() {
+        int max = 0;
+        for (int i = 0; i < nodesSize; i++) {
+            max = Math.max(max, degree(i));
+        }
+        return max;
+    }
+
+    /**
+     * True when the bitset view takes less memory than the adjacency lists
+     */
+    public boolean isDense() {
+        return (long) nodesSize * nodesSize <= 64L * neighbors.length;
+    }
+
+    public boolean isAdjacent(int u, int v) {
+        long[][] bits = adjacencyBits;
+        if (bits != null)
+            return (bits[u][v >>> 6] & (1L << v)) != 0;
+        return Arrays.binarySearch(neighbors, offsets[u], offsets[u + 1], v) >= 0;
+    }
+
+    /**
+     * Bitset view of the adjacency matrix: bit v of row u is set when u and v are adjacent. O(V^2 / 64) memory.
+     */
+    public long[][] getAdjacencyBits() {
+        long[][] bits = adjacencyBits;
+        if (bits == null) {
+            synchronized (this) {
+                bits = adjacencyBits;
+                if (bits == null) {
+                    int words = (nodesSize + 63) >>> 6;
+                    bits = new long[nodesSize][words];
+                    for (int u = 0; u < nodesSize; u++) {
+                        for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                            bits[u][neighbors[k] >>> 6] |= 1L << neighbors[k];
+                        }
+                    }
+                    adjacencyBits = bits;
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Nodes ordered by decreasing degree (ties by increasing index), computed by a counting sort
+     */
+    public int[] getNodesOrderedByDegree() {
+        int maxDegree = getMaxDegree();
+        int[] start = new int[maxDegree + 2];
+        for (int i = 0; i < nodesSize; i++) {
+            start[maxDegree - degree(i) + 1]++;
+        }
+        for (int d = 1; d < start.length; d++) {
+            start[d] += start[d - 1];
+        }
+        int[] nodes = new int[nodesSize];
+        for (int i = 0; i < nodesSize; i++) {
+            nodes[start[maxDegree - degree(i)]++] = i;
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,229 @@
+package coloring;
+
+import java.util.Arrays;
+
+/**
+ * Preprocessing that removes nodes whose color can always be chosen afterwards, given a lower bound k on the
+ * number of colors (e.g. a clique size):
+ * - a node with less than k neighbors left can take one of the k colors not used by its neighbors;
+ * - a node u dominated by a non adjacent node v, N(u) included in N(v), can take the color of v.
+ * Both rules are applied until none fires. The remaining graph is colored by any engine and the removed nodes
+ * are added back in reverse order, so a k' coloring of the reduced graph gives a max(k, k') coloring of the graph.
+ */
+public class GraphReduction {
+
+    // The domination test uses the bitset view, O(n^2 / 64) memory, so it only runs up to this number of nodes
+    private static final int BITSET_NODES_LIMIT = 1 << 14;
+
+    private final Graph graph;
+    private final int lowerBound;
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    // Removed nodes in removal order, with the node they copy the color from (-1 when colored by first fit)
+    private final int[] removed;
+    private final int[] dominator;
+    private int removedSize;
+    private int dominatedSize;
+
+    private final long[] alive;
+    private final int[] degree;
+    private final int[] stack;
+    private final boolean[] stacked;
+    private int stackSize;
+
+    // reduced node -> graph node
+    private int[] nodes;
+    private Graph reduced;
+
+    public GraphReduction(Graph graph, int lowerBound) {
+        this.graph = graph;
+        this.lowerBound = Math.max(1, lowerBound);
+        this.offsets = graph.getOffsets();
+        this.neighbors = graph.getNeighbors();
+        int nodesSize = graph.getNodesSize();
+        this.removed = new int[nodesSize];
+        this.dominator = new int[nodesSize];
+        this.alive = new long[(nodesSize + 63) >>> 6];
+        this.degree = new int[nodesSize];
+        this.stack = new int[nodesSize];
+        this.stacked = new boolean[nodesSize];
+    }
+
+    public GraphReduction reduce() {
+        int nodesSize = graph.getNodesSize();
+        for (int u = 0; u < nodesSize; u++) {
+            alive[u >>> 6] |= 1L << u;
+            degree[u] = graph.degree(u);
+            pushIfLow(u);
+        }
+
+        boolean dominance = nodesSize <= BITSET_NODES_LIMIT || graph.isDense();
+        do {
+            while (stackSize > 0) {
+                remove(stack[--stackSize], -1);
+            }
+        } while (dominance && removeDominated() > 0);
+
+        buildReduced();
+        return this;
+    }
+
+    public Graph getReduced() {
+        return reduced;
+    }
+
+    public int getPeeledSize() {
+        return removedSize - dominatedSize;
+    }
+
+    public int getDominatedSize() {
+        return dominatedSize;
+    }
+
+    /**
+     * The given nodes of the graph that are left in the reduced graph, as nodes of the reduced graph
+     */
+    public int[] toReduced(int[] graphNodes) {
+        int[] reducedNodes = new int[graphNodes.length];
+        int size = 0;
+        for (int u : graphNodes) {
+            // nodes is sorted, the reduced nodes keep the order of the graph nodes
+            int i = Arrays.binarySearch(nodes, u);
+            if (i >= 0)
+                reducedNodes[size++] = i;
+        }
+        return Arrays.copyOf(reducedNodes, size);
+    }
+
+    /**
+     * Coloring of the graph from a coloring of the reduced graph
+     */
+    public int[] expand(int[] reducedColors) {
+        int[] colors = new int[graph.getNodesSize()];
+        Arrays.fill(colors, -1);
+        for (int i = 0; i < nodes.length; i++) {
+            colors[nodes[i]] = reducedColors[i];
+        }
+
+        // used[c] == u + 1 when color c is taken by a colored neighbor of u
+        int[] used = new int[graph.getMaxDegree() + 2];
+        for (int r = removedSize - 1; r >= 0; r--) {
+            int u = removed[r];
+            if (dominator[u] >= 0) {
+                colors[u] = colors[dominator[u]];
+                continue;
+            }
+            int limit = offsets[u + 1] - offsets[u];
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int c = colors[neighbors[k]];
+                if (c >= 0 && c <= limit)
+                    used[c] = u + 1;
+            }
+            int color = 0;
+            while (used[color] == u + 1) {
+                color++;
+            }
+            colors[u] = color;
+        }
+        return colors;
+    }
+
+    private void pushIfLow(int u) {
+        if (degree[u] < lowerBound && !stacked[u]) {
+            stacked[u] = true;
+            stack[stackSize++] = u;
+        }
+    }
+
+    private boolean isAlive(int u) {
+        return (alive[u >>> 6] & (1L << u)) != 0;
+    }
+
+    private void remove(int u, int copyFrom) {
+        alive[u >>> 6] &= ~(1L << u);
+        removed[removedSize++] = u;
+        dominator[u] = copyFrom;
+        for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+            int v = neighbors[k];
+            if (isAlive(v)) {
+                degree[v]--;
+                pushIfLow(v);
+            }
+        }
+    }
+
+    /**
+     * One sweep of the domination rule. A dominating node is adjacent to every neighbor of u, so the candidates are
+     * the neighbors of the remaining neighbor of u with the smallest degree. Returns the number of removed nodes.
+     */
+    private int removeDominated() {
+        long[][] adjacency = graph.getAdjacencyBits();
+        int count = 0;
+        for (int u = 0; u < graph.getNodesSize(); u++) {
+            if (!isAlive(u) || stacked[u])
+                continue;
+            int pivot = -1;
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int w = neighbors[k];
+                if (isAlive(w) && (pivot < 0 || degree[w] < degree[pivot]))
+                    pivot = w;
+            }
+            if (pivot < 0)
+                continue;
+
+            long[] row = adjacency[u];
+            for (int k = offsets[pivot]; k < offsets[pivot + 1]; k++) {
+                int v = neighbors[k];
+                if (v == u || !isAlive(v) || degree[v] < degree[u] || (row[v >>> 6] & (1L << v)) != 0)
+                    continue;
+                if (isIncluded(row, adjacency[v])) {
+                    remove(u, v);
+                    dominatedSize++;
+                    count++;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Every remaining neighbor of u is a neighbor of v
+    private boolean isIncluded(long[] neighborsOfU, long[] neighborsOfV) {
+        for (int w = 0; w < alive.length; w++) {
+            if ((neighborsOfU[w] & alive[w] & ~neighborsOfV[w]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void buildReduced() {
+        int nodesSize = graph.getNodesSize();
+        int[] index = new int[nodesSize];
+        nodes = new int[nodesSize - removedSize];
+        int size = 0;
+        int edgesSize = 0;
+        for (int u = 0; u < nodesSize; u++) {
+            if (isAlive(u)) {
+                index[u] = size;
+                nodes[size++] = u;
+                edgesSize += degree[u];
+            }
+        }
+        edgesSize /= 2;
+
+        int[] from = new int[edgesSize];
+        int[] to = new int[edgesSize];
+        int e = 0;
+        for (int u : nodes) {
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                int v = neighbors[k];
+                if (v > u && isAlive(v)) {
+                    from[e] = index[u];
+                    to[e++] = index[v];
+                }
+            }
+        }
+        reduced = Graph.fromEdges(nodes.length, edgesSize, from, to);
+    }
+}
@@ -0,0 +1,344 @@
+package coloring;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Parallel multi-start DSatur followed by iterated greedy (Culberson) passes.
+ *
+ * Every start runs a randomized DSatur, then recolors the nodes with first fit, visiting whole color classes
+ * in a new order at each pass, which never increases the number of colors. The forbidden colors of each node
+ * are kept in a long[] bitset. Starts run on a fork-join pool and share the best number of colors, so a start
+ * abandons a pass as soon as it needs as many colors as the best coloring found by any worker.
+ */
+public class GreedyColoring {
+
+    // Iterated greedy passes without improvement before a start gives up
+    private static final int MAX_STALE_PASSES = 50;
+
+    private final Graph graph;
+    private final int threads;
+    private final int starts;
+    private final long seed;
+    private int lowerBound = 1;
+
+    private final AtomicInteger bestColors = new AtomicInteger(Integer.MAX_VALUE);
+    private final AtomicReference<int[]> best = new AtomicReference<>();
+    private final AtomicInteger nextStart = new AtomicInteger();
+
+    public GreedyColoring(Graph graph, int threads, int starts, long seed) {
+        this.graph = graph;
+        this.threads = Math.max(1, threads);
+        this.starts = starts;
+        this.seed = seed;
+    }
+
+    /**
+     * Number of colors that, once reached, stops every worker (e.g. a clique size)
+     */
+    public GreedyColoring setLowerBound(int lowerBound) {
+        this.lowerBound = Math.max(1, lowerBound);
+        return this;
+    }
+
+    /**
+     * Run the starts until all of them are done, the lower bound is reached or the time limit expires. The first
+     * DSatur start is always finished, so a coloring is returned whatever the time limit.
+     */
+    public int[] solve(long timeLimitMillis) {
+        long deadline = System.currentTimeMillis() + timeLimitMillis;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                pool.execute(() -> new Worker().run(deadline));
+            }
+            pool.shutdown();
+            pool.awaitTermination(Math.max(1, deadline - System.currentTimeMillis() + 1000), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        if (best.get() == null)
+            new Worker().runFirst();
+        return best.get();
+    }
+
+    public int getBestColors() {
+        return bestColors.get();
+    }
+
+    private void offer(int[] colors, int colorsSize) {
+        synchronized (best) {
+            if (colorsSize < bestColors.get()) {
+                best.set(colors.clone());
+                bestColors.set(colorsSize);
+            }
+        }
+    }
+
+    private boolean finished(long deadline) {
+        return bestColors.get() <= lowerBound || System.currentTimeMillis() >= deadline;
+    }
+
+    /**
+     * Per thread workspace, reused by every start the thread runs
+     */
+    private class Worker {
+        private final int nodesSize = graph.getNodesSize();
+        private final int[] offsets = graph.getOffsets();
+        private final int[] neighbors = graph.getNeighbors();
+        private final int words = (graph.getMaxDegree() + 1 + 63) >>> 6;
+
+        // forbidden[u * words + (c >>> 6)] has bit c set when a neighbor of u has color c
+        private final long[] forbidden = new long[nodesSize * words];
+        private final int[] colors = new int[nodesSize];
+        private final int[] order = new int[nodesSize];
+        private final int[] classStart = new int[graph.getMaxDegree() + 2];
+        private final int[] classRank = new int[graph.getMaxDegree() + 1];
+        private final int[] classSize = new int[graph.getMaxDegree() + 1];
+        private final int[] saturation = new int[nodesSize];
+        private final SaturationHeap heap = new SaturationHeap(nodesSize);
+        private Random random;
+
+        // DSatur of the first start, whatever the deadline
+        void runFirst() {
+            random = new Random(seed);
+            int colorsSize = dsatur();
+            if (colorsSize >= 0)
+                offer(colors, colorsSize);
+        }
+
+        void run(long deadline) {
+            while (!finished(deadline)) {
+                int start = nextStart.getAndIncrement();
+                if (starts > 0 && start >= starts)
+                    break;
+                random = new Random(seed + start);
+                int colorsSize = dsatur();
+                if (colorsSize < 0)
+                    continue;
+                offer(colors, colorsSize);
+
+                int stale = 0;
+                while (stale < MAX_STALE_PASSES && !finished(deadline)) {
+                    int passColors = iteratedGreedyPass(colorsSize);
+                    if (passColors < colorsSize) {
+                        colorsSize = passColors;
+                        offer(colors, colorsSize);
+                        stale = 0;
+                    } else {
+                        stale++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Randomized DSatur. Returns the number of colors, or -1 if the pass cannot beat the shared best.
+         */
+        private int dsatur() {
+            Arrays.fill(forbidden, 0);
+            Arrays.fill(saturation, 0);
+            Arrays.fill(colors, -1);
+            heap.clear();
+            for (int u = 0; u < nodesSize; u++) {
+                heap.insert(u, key(u));
+            }
+
+            int colorsSize = 0;
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                int color = firstAllowed(u);
+                if (color + 1 >= bestColors.get())
+                    return -1;
+                colors[u] = color;
+                colorsSize = Math.max(colorsSize, color + 1);
+
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int v = neighbors[e];
+                    if (colors[v] >= 0)
+                        continue;
+                    int word = v * words + (color >>> 6);
+                    long bit = 1L << color;
+                    if ((forbidden[word] & bit) == 0) {
+                        forbidden[word] |= bit;
+                        saturation[v]++;
+                        heap.increase(v, key(v));
+                    }
+                }
+            }
+            return colorsSize;
+        }
+
+        /**
+         * Recolor with first fit visiting the current color classes in a new order. Returns the number of colors.
+         */
+        private int iteratedGreedyPass(int colorsSize) {
+            orderByColorClasses(colorsSize);
+
+            Arrays.fill(forbidden, 0);
+            int newColorsSize = 0;
+            for (int i = 0; i < nodesSize; i++) {
+                int u = order[i];
+                int color = firstAllowed(u);
+                colors[u] = color;
+                newColorsSize = Math.max(newColorsSize, color + 1);
+                long bit = 1L << color;
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    forbidden[neighbors[e] * words + (color >>> 6)] |= bit;
+                }
+            }
+            return newColorsSize;
+        }
+
+        // Order the classes by reverse color, largest class first or at random, then list their nodes
+        private void orderByColorClasses(int colorsSize) {
+            Arrays.fill(classStart, 0, colorsSize + 1, 0);
+            for (int u = 0; u < nodesSize; u++) {
+                classStart[colors[u] + 1]++;
+            }
+
+            int strategy = random.nextInt(10);
+            for (int c = 0; c < colorsSize; c++) {
+                classRank[c] = c;
+            }
+            if (strategy < 5) {
+                for (int c = 0; c < colorsSize; c++) {
+                    classRank[c] = colorsSize - 1 - c;
+                }
+            } else if (strategy < 8) {
+                // Insertion sort by decreasing class size, the number of colors is small
+                for (int c = 1; c < colorsSize; c++) {
+                    int rank = classRank[c];
+                    int j = c - 1;
+                    while (j >= 0 && classStart[classRank[j] + 1] < classStart[rank + 1]) {
+                        classRank[j + 1] = classRank[j];
+                        j--;
+                    }
+                    classRank[j + 1] = rank;
+                }
+            } else {
+                for (int c = colorsSize - 1; c > 0; c--) {
+                    int j = random.nextInt(c + 1);
+                    int swap = classRank[c];
+                    classRank[c] = classRank[j];
+                    classRank[j] = swap;
+                }
+            }
+
+            // classStart[color] becomes the first position of the class in the new order
+            for (int c = 0; c < colorsSize; c++) {
+                classSize[c] = classStart[c + 1];
+            }
+            int position = 0;
+            for (int r = 0; r < colorsSize; r++) {
+                classStart[classRank[r]] = position;
+                position += classSize[classRank[r]];
+            }
+            for (int u = 0; u < nodesSize; u++) {
+                order[classStart[colors[u]]++] = u;
+            }
+        }
+
+        private int firstAllowed(int u) {
+            int base = u * words;
+            for (int w = 0; w < words; w++) {
+                long free = ~forbidden[base + w];
+                if (free != 0)
+                    return (w << 6) + Long.numberOfTrailingZeros(free);
+            }
+            return words << 6;
+        }
+
+        // Highest saturation first, then highest degree, then random
+        private long key(int u) {
+            return ((long) saturation[u] << 42) | ((long) graph.degree(u) << 21) | random.nextInt(1 << 21);
+        }
+    }
+
+    /**
+     * Indexed binary max-heap of nodes keyed by a long, supporting key increases
+     */
+    private static class SaturationHeap {
+        private final int[] heap;
+        private final int[] position;
+        private final long[] keys;
+        private int size;
+
+        SaturationHeap(int capacity) {
+            heap = new int[capacity];
+            position = new int[capacity];
+            keys = new long[capacity];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void insert(int node, long key) {
+            keys[node] = key;
+            heap[size] = node;
+            position[node] = size;
+            siftUp(size++);
+        }
+
+        void increase(int node, long key) {
+            keys[node] = key;
+            siftUp(position[node]);
+        }
+
+        int poll() {
+            int top = heap[0];
+            int last = heap[--size];
+            if (size > 0) {
+                heap[0] = last;
+                position[last] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private void siftUp(int i) {
+            int node = heap[i];
+            long key = keys[node];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[heap[parent]] >= key)
+                    break;
+                heap[i] = heap[parent];
+                position[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = node;
+            position[node] = i;
+        }
+
+        private void siftDown(int i) {
+            int node = heap[i];
+            long key = keys[node];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && keys[heap[child + 1]] > keys[heap[child]])
+                    child++;
+                if (keys[heap[child]] <= key)
+                    break;
+                heap[i] = heap[child];
+                position[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = node;
+            position[node] = i;
+        }
+    }
+}
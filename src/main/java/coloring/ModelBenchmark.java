@@ -0,0 +1,171 @@
+package coloring;
+
+import input.HandleFile;
+import org.chocosolver.solver.Model;
+import org.chocosolver.solver.search.strategy.Search;
+import org.chocosolver.solver.variables.IntVar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks of the Choco coloring model.
+ *
+ * Usage: java coloring.ModelBenchmark [-case=symmetry|warmstart] [-time=10] [files...]
+ *
+ * symmetry: compare the previous symmetry breaking model (a max over every prefix of the degree order, O(n^2)
+ * variable references) with the chained prefix max model. Prints the model size, the build time and the search
+ * speed (nodes/s) within the time limit of each model.
+ *
+ * warmstart: compare the model with full domains [0, n - 1] and the one bounded by the DSatur pre-pass and the
+ * clique lower bound, warm started with the DSatur coloring. Prints the model memory and the time to the first
+ * solution (pre-pass included).
+ */
+public class ModelBenchmark {
+
+    private static final String[] WARM_START_INSTANCES = {
+            "assignament/coloring/data/gc_250_1",
+            "assignament/coloring/data/gc_250_5",
+            "assignament/coloring/data/gc_250_9",
+            "assignament/coloring/data/gc_500_1",
+            "assignament/coloring/data/gc_500_5",
+            "assignament/coloring/data/gc_500_9"
+    };
+
+    private static final String[] DEFAULT_INSTANCES = {
+            "assignament/coloring/data/gc_100_5",
+            "assignament/coloring/data/gc_250_5",
+            "assignament/coloring/data/gc_500_5",
+            "assignament/coloring/data/gc_1000_5"
+    };
+
+    public static void main(String[] args) throws IOException {
+        long timeLimitMillis = (long) (1000 * Double.parseDouble(HandleFile.getOption("time", "10", args)));
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("-"))
+                files.add(arg);
+        }
+        boolean warmStart = "warmstart".equals(HandleFile.getOption("case", "symmetry", args));
+        if (files.isEmpty())
+            files.addAll(Arrays.asList(warmStart ? WARM_START_INSTANCES : DEFAULT_INSTANCES));
+
+        if (warmStart) {
+            warmStart(files, timeLimitMillis);
+            return;
+        }
+
+        System.out.printf("%-12s %-8s %8s %8s %10s %10s %8s%n", "instance", "model", "vars", "cstrs", "build(ms)", "nodes/s", "colors");
+        for (String file : files) {
+            Graph graph = new ParserFile("-file=" + file).invoke().getGraph();
+            String name = new File(file).getName();
+
+            long start = System.nanoTime();
+            ColoringModel legacy = buildPrefixArrayModel(graph);
+            report(name, "prefix", legacy, System.nanoTime() - start, timeLimitMillis);
+
+            start = System.nanoTime();
+            int[] highestDegree = {graph.getNodesOrderedByDegree()[0]};
+            ColoringModel chained = new SolverColoring(graph).buildModel(highestDegree, graph.getNodesSize());
+            report(name, "chained", chained, System.nanoTime() - start, timeLimitMillis);
+        }
+    }
+
+    private static void warmStart(List<String> files, long timeLimitMillis) throws IOException {
+        System.out.printf("%-12s %-8s %12s %14s %8s%n", "instance", "model", "memory(MB)", "first sol(ms)", "colors");
+        for (String file : files) {
+            Graph graph = new ParserFile("-file=" + file).invoke().getGraph();
+            String name = new File(file).getName();
+            SolverColoring solverColoring = new SolverColoring(graph);
+
+            long memory = usedMemory();
+            long start = System.nanoTime();
+            int[] highestDegree = {graph.getNodesOrderedByDegree()[0]};
+            ColoringModel cold = solverColoring.buildModel(highestDegree, graph.getNodesSize());
+            long coldMemory = usedMemory() - memory;
+            solverColoring.setSearch(cold, null);
+            firstSolution(name, "cold", cold, coldMemory, start, timeLimitMillis);
+            cold = null;
+
+            memory = usedMemory();
+            start = System.nanoTime();
+            int[] greedy = new GreedyColoring(graph, 1, 1, 1).solve(1000);
+            int[] clique = new CliqueFinder(graph).greedy(100);
+            ColoringModel warm = solverColoring.buildModel(clique, Colorings.countColors(greedy));
+            long warmMemory = usedMemory() - memory;
+            solverColoring.setSearch(warm, Colorings.relabel(greedy, solverColoring.symmetryOrder(clique)));
+            firstSolution(name, "warm", warm, warmMemory, start, timeLimitMillis);
+        }
+    }
+
+    private static void firstSolution(String name, String modelName, ColoringModel coloringModel, long memory,
+                                      long start, long timeLimitMillis) {
+        org.chocosolver.solver.Solver solver = coloringModel.getModel().getSolver();
+        solver.limitTime(timeLimitMillis);
+        int colors = solver.solve() ? coloringModel.getLargestColor().getValue() + 1 : -1;
+        System.out.printf("%-12s %-8s %12.2f %14.1f %8d%n", name, modelName, memory / 1048576.0,
+                (System.nanoTime() - start) / 1e6, colors);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, String modelName, ColoringModel coloringModel, long buildNanos, long timeLimitMillis) {
+        Model model = coloringModel.getModel();
+        org.chocosolver.solver.Solver solver = model.getSolver();
+        solver.limitTime(timeLimitMillis);
+        solver.setSearch(Search.minDomLBSearch(coloringModel.getNodesColor()));
+        int best = -1;
+        while (solver.solve()) {
+            best = coloringModel.getLargestColor().getValue() + 1;
+        }
+        double nodesPerSecond = solver.getNodeCount() / Math.max(1e-3, solver.getTimeCount());
+        System.out.printf("%-12s %-8s %8d %8d %10.1f %10.0f %8d%n", name, modelName, model.getNbVars(),
+                model.getNbCstrs(), buildNanos / 1e6, nodesPerSecond, best);
+    }
+
+    // Symmetry breaking as posted before: color(order[i]) <= max(colors of order[0..i-1]) + 1, built for every i
+    private static ColoringModel buildPrefixArrayModel(Graph graph) {
+        int nodesSize = graph.getNodesSize();
+        int[] order = graph.getNodesOrderedByDegree();
+        Model model = new Model();
+        IntVar[] nodesColor = new IntVar[nodesSize];
+        for (int i = 0; i < nodesSize; i++) {
+            if (i == order[0]) {
+                nodesColor[i] = model.intVar("node:0", 0, 0);
+            } else if (graph.isAdjacent(order[0], i)) {
+                nodesColor[i] = model.intVar("node:" + i, 1, nodesSize - 1);
+            } else {
+                nodesColor[i] = model.intVar("node:" + i, 0, nodesSize - 1);
+            }
+        }
+        IntVar largestColor = model.intVar("largest_color", 0, nodesSize - 1);
+        largestColor.eq(nodesColor[0].max(nodesColor)).post();
+        model.setObjective(Model.MINIMIZE, largestColor);
+
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        for (int u = 0; u < nodesSize; u++) {
+            for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                if (neighbors[k] > u)
+                    model.arithm(nodesColor[u], "!=", nodesColor[neighbors[k]]).post();
+            }
+        }
+        for (int i = 1; i < nodesSize; i++) {
+            IntVar[] vector = new IntVar[i];
+            for (int j = 0; j < i; j++) {
+                vector[j] = nodesColor[order[j]];
+            }
+            nodesColor[order[i]].le(vector[0].max(vector).add(1)).post();
+        }
+        return new ColoringModel(model, nodesColor, largestColor);
+    }
+}
@@ -1,11 +1,9 @@
 package coloring;
 
-import input.HandleFile;
-import lombok.AllArgsConstructor;
+import input.InstanceReader;
 import lombok.Data;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Created by Leo on 08/12/2016.
@@ -15,37 +13,24 @@ class ParserFile {
     private String[] args;
     private int nodesSize;
     private int edgesSize;
-    private int[][] edges;
-    private boolean[][] matrixEdges;
+    private Graph graph;
 
     public ParserFile(String... args) {
         this.args = args;
     }
 
-    public boolean[][] getMatrixEdges() {
-        return matrixEdges;
-    }
-
     public ParserFile invoke() throws IOException {
-        List<String> lines = HandleFile.getLines(args);
-
-        String[] firstLine = lines.get(0).split("\\s+");
-        nodesSize = Integer.parseInt(firstLine[0]);
-        edgesSize = Integer.parseInt(firstLine[1]);
-
-        edges = new int[edgesSize][2];
-        matrixEdges = new boolean[nodesSize][nodesSize];
-
-        for (int i = 1; i <= edgesSize; i++) {
-            String line = lines.get(i);
-            String[] parts = line.split("\\s+");
-
-            int e0 = Integer.parseInt(parts[0]);
-            int e1 = Integer.parseInt(parts[1]);
-            edges[i-1][0] = e0;
-            edges[i-1][1] = e1;
-            matrixEdges[e0][e1] = true;
-            matrixEdges[e1][e0] = true;
+        try (InstanceReader reader = InstanceReader.open(args)) {
+            nodesSize = reader.nextInt();
+            edgesSize = reader.nextInt();
+
+            int[] from = new int[edgesSize];
+            int[] to = new int[edgesSize];
+            for (int i = 0; i < edgesSize; i++) {
+                from[i] = reader.nextInt();
+                to[i] = reader.nextInt();
+            }
+            graph = Graph.fromEdges(nodesSize, edgesSize, from, to);
         }
         return this;
     }
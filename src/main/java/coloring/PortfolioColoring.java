@@ -0,0 +1,137 @@
+package coloring;
+
+import org.chocosolver.solver.Model;
+import org.chocosolver.solver.ParallelPortfolio;
+import org.chocosolver.solver.Solution;
+import org.chocosolver.solver.exception.SolverException;
+import org.chocosolver.solver.search.limits.FailCounter;
+import org.chocosolver.solver.search.loop.monitors.IMonitorSolution;
+import org.chocosolver.solver.search.strategy.Search;
+import org.chocosolver.solver.variables.IntVar;
+
+/**
+ * Solve copies of the coloring model in parallel, each one with a different search strategy. The Choco portfolio
+ * shares the objective: as soon as a worker finds a coloring, the largest_color bound of every other worker is
+ * tightened. The strategy of the worker that found the best coloring is reported.
+ */
+public class PortfolioColoring {
+
+    private static final long WARM_START_MILLIS = 1000;
+    private static final int RESTART_FAILS = 100;
+    private static final int RESTART_LIMIT = 100000;
+
+    private enum Strategy {
+        MIN_DOM_LB, DOM_OVER_WDEG, ACTIVITY, RANDOM_RESTARTS
+    }
+
+    private final SolverColoring solverColoring;
+    private final Graph graph;
+    private final int threads;
+    private final long seed;
+
+    public PortfolioColoring(SolverColoring solverColoring, int threads, long seed) {
+        this.solverColoring = solverColoring;
+        this.graph = solverColoring.getGraph();
+        this.threads = Math.max(1, threads);
+        this.seed = seed;
+    }
+
+    public void solve(long timeLimitMillis) {
+        long start = System.currentTimeMillis();
+
+        // Same bounds as the single model: DSatur coloring for the domains, precolored clique
+        int[] incumbent = new GreedyColoring(graph, threads, 0, seed).solve(WARM_START_MILLIS);
+        int[] clique = solverColoring.findClique();
+        int maxColors = Colorings.countColors(incumbent);
+        if (maxColors <= clique.length) {
+            solverColoring.printSolution(incumbent, true);
+            return;
+        }
+        incumbent = Colorings.relabel(incumbent, solverColoring.symmetryOrder(clique));
+
+        ParallelPortfolio portfolio = new ParallelPortfolio(false);
+        ColoringModel[] models = new ColoringModel[threads];
+        Solution[] solutions = new Solution[threads];
+        Strategy[] strategies = new Strategy[threads];
+        long remainingMillis = Math.max(1, timeLimitMillis - (System.currentTimeMillis() - start));
+        for (int t = 0; t < threads; t++) {
+            models[t] = solverColoring.buildModel(clique, maxColors);
+            strategies[t] = Strategy.values()[t % Strategy.values().length];
+            configure(models[t], strategies[t], t == 0 ? incumbent : null, seed + t);
+
+            Model model = models[t].getModel();
+            model.getSolver().limitTime(remainingMillis);
+            final IntVar[] nodesColor = models[t].getNodesColor();
+            final Solution solution = new Solution(model, nodesColor);
+            solutions[t] = solution;
+            model.getSolver().plugMonitor((IMonitorSolution) () -> {
+                solution.record();
+                if (solverColoring.getSolutionSink() != null) {
+                    int[] colors = new int[nodesColor.length];
+                    for (int i = 0; i < nodesColor.length; i++) {
+                        colors[i] = nodesColor[i].getValue();
+                    }
+                    solverColoring.getSolutionSink().accept(colors);
+                }
+            });
+            portfolio.addModel(model);
+        }
+
+        int winner = -1;
+        int bestColors = Integer.MAX_VALUE;
+        long searchStart = System.currentTimeMillis();
+        while (portfolio.solve()) {
+            Model best = portfolio.getBestModel();
+            for (int t = 0; t < threads; t++) {
+                if (models[t].getModel() == best) {
+                    winner = t;
+                    bestColors = models[t].getLargestColor().getValue() + 1;
+                }
+            }
+            if (winner >= 0)
+                System.err.println("portfolio: " + bestColors + " colors by worker " + winner + " (" + strategies[winner] + ")");
+            if (bestColors <= clique.length)
+                break;
+        }
+
+        if (winner < 0) {
+            solverColoring.printSolution(incumbent, false);
+            return;
+        }
+        System.err.println("portfolio: best coloring found by " + strategies[winner]);
+        // The worker proving the bound is not always the one holding the best coloring: the portfolio as a whole
+        // proved the optimum when it stopped before the time limit
+        boolean optimal = bestColors <= clique.length
+                || System.currentTimeMillis() - searchStart < remainingMillis;
+        try {
+            IntVar[] nodesColor = models[winner].getNodesColor();
+            int[] colors = new int[nodesColor.length];
+            for (int i = 0; i < nodesColor.length; i++) {
+                colors[i] = solutions[winner].getIntVal(nodesColor[i]);
+            }
+            solverColoring.printSolution(colors, optimal);
+        } catch (SolverException e) {
+            solverColoring.printSolution(incumbent, false);
+        }
+    }
+
+    private void configure(ColoringModel coloringModel, Strategy strategy, int[] hint, long seed) {
+        IntVar[] nodesColor = coloringModel.getNodesColor();
+        org.chocosolver.solver.Solver solver = coloringModel.getModel().getSolver();
+        switch (strategy) {
+            case MIN_DOM_LB:
+                solverColoring.setSearch(coloringModel, hint);
+                break;
+            case DOM_OVER_WDEG:
+                solver.setSearch(Search.domOverWDegSearch(nodesColor));
+                break;
+            case ACTIVITY:
+                solver.setSearch(Search.activityBasedSearch(nodesColor));
+                break;
+            case RANDOM_RESTARTS:
+                solver.setSearch(Search.randomSearch(nodesColor, seed));
+                solver.setLubyRestart(RESTART_FAILS, new FailCounter(coloringModel.getModel(), RESTART_FAILS), RESTART_LIMIT);
+                break;
+        }
+    }
+}
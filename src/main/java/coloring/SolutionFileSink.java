@@ -0,0 +1,39 @@
+package coloring;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Consumer;
+
+/**
+ * Write every improving coloring to a file as soon as it is found, so the best coloring survives if the
+ * process is killed at the time limit. The file is replaced atomically and is never left half written.
+ */
+public class SolutionFileSink implements Consumer<int[]> {
+
+    private final Path file;
+    private final Path temporaryFile;
+    private int bestColors = Integer.MAX_VALUE;
+
+    public SolutionFileSink(String fileName) {
+        this.file = Paths.get(fileName).toAbsolutePath();
+        this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    @Override
+    public synchronized void accept(int[] colors) {
+        int colorsSize = Colorings.countColors(colors);
+        if (colorsSize >= bestColors)
+            return;
+        bestColors = colorsSize;
+        try {
+            Files.write(temporaryFile, Colorings.format(colors, false).getBytes(StandardCharsets.US_ASCII));
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -18,6 +18,9 @@ import org.chocosolver.solver.variables.IntVar;
 public class Solver {
 
     private static int timeout = 4 * 60;
+    private static final long SEED = 1;
+    private static final int CLIQUE_STARTS = 100;
+    private static final int CLIQUE_ITERATIONS = 20000;
 
     public static void main(String[] args) {
         try {
@@ -30,15 +33,83 @@ public class Solver {
 
 
     public static void solve(String[] args) throws IOException {
+        long start = System.currentTimeMillis();
 
         ParserFile parserFile = new ParserFile(args).invoke();
 
-        int nodesSize = parserFile.getNodesSize();
-        boolean[][] matrixEdges = parserFile.getMatrixEdges();
-        int edgesSize = parserFile.getEdgesSize();
-        int[][] edges = parserFile.getEdges();
+        Graph graph = parserFile.getGraph();
+        // A large clique, found once: its size is the lower bound the engines stop at, and the Choco models
+        // precolor it
+        int[] clique = new CliqueFinder(graph, SEED).find(CLIQUE_STARTS, CLIQUE_ITERATIONS);
+        int lowerBound = clique.length;
+        // -reduce=false colors the whole graph, otherwise the nodes that can be colored afterwards are removed first
+        GraphReduction reduction = null;
+        if (Boolean.parseBoolean(HandleFile.getOption("reduce", "true", args))) {
+            long reductionStart = System.currentTimeMillis();
+            reduction = new GraphReduction(graph, lowerBound).reduce();
+            Graph reduced = reduction.getReduced();
+            System.err.println("reduction: " + graph.getNodesSize() + " -> " + reduced.getNodesSize() + " nodes ("
+                    + reduction.getPeeledSize() + " peeled, " + reduction.getDominatedSize() + " dominated), "
+                    + graph.getEdgesSize() + " -> " + reduced.getEdgesSize() + " edges in "
+                    + (System.currentTimeMillis() - reductionStart) + " ms");
+            graph = reduced;
+            clique = reduction.toReduced(clique);
+        }
+
+        SolverColoring solverColoring = new SolverColoring(graph);
+        solverColoring.setReduction(reduction);
+        solverColoring.setClique(clique);
+        // -optimize=first (stop at the proven optimum or at -target colors) or all (enumerate the optimal colorings)
+        solverColoring.setAllOptimalSolutions("all".equals(HandleFile.getOption("optimize", "first", args)));
+        solverColoring.setTargetColors(Integer.parseInt(HandleFile.getOption("target", "0", args)));
+        solverColoring.setWarmStart(Boolean.parseBoolean(HandleFile.getOption("warmstart", "true", args)));
+        // -clique=false leaves the clique out of the Choco models (no precoloring, no lower bound on the colors);
+        // the reduction and the heuristics still stop at its size
+        solverColoring.setCliqueBound(Boolean.parseBoolean(HandleFile.getOption("clique", "true", args)));
+        // -out=file keeps the best coloring found so far on disk
+        String out = HandleFile.getOption("out", null, args);
+        if (out != null) {
+            SolutionFileSink sink = new SolutionFileSink(out);
+            GraphReduction expansion = reduction;
+            solverColoring.setSolutionSink(expansion == null ? sink : colors -> sink.accept(expansion.expand(colors)));
+        }
+        long timeLimitMillis = (long) (1000 * Double.parseDouble(
+                HandleFile.getOption("time", String.valueOf(SolverColoring.TIME_LIMIT_SECONDS), args)));
+        int threads = Integer.parseInt(HandleFile.getOption("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors()), args));
 
-        new SolverColoring(nodesSize, edgesSize, edges, matrixEdges).solve();
+        if (graph.getNodesSize() == 0) {
+            // Every node was removed by the reduction, they all fit in the lower bound colors
+            solverColoring.printSolution(new int[0], true);
+            return;
+        }
+        // -mode=cp (Choco model), tabu (Tabucol local search), hybrid (Tabucol warm starts the Choco model)
+        // dsatur (parallel multi-start DSatur + iterated greedy) or portfolio (-threads Choco models with different searches)
+        String mode = HandleFile.getOption("mode", "cp", args);
+        switch (mode) {
+            case "tabu": {
+                int[] colors = new TabuColoring(graph, SEED).setLowerBound(lowerBound).solve(null, timeLimitMillis);
+                solverColoring.printSolution(colors, Colorings.countColors(colors) <= lowerBound);
+                break;
+            }
+            case "dsatur": {
+                int starts = Integer.parseInt(HandleFile.getOption("starts", "0", args));
+                int[] colors = new GreedyColoring(graph, threads, starts, SEED).setLowerBound(lowerBound).solve(timeLimitMillis);
+                solverColoring.printSolution(colors, Colorings.countColors(colors) <= lowerBound);
+                break;
+            }
+            case "hybrid": {
+                int[] incumbent = new TabuColoring(graph, SEED).setLowerBound(lowerBound).solve(null, timeLimitMillis / 4);
+                solverColoring.solve(incumbent, timeLimitMillis - timeLimitMillis / 4);
+                break;
+            }
+            case "portfolio":
+                new PortfolioColoring(solverColoring, threads, SEED).solve(timeLimitMillis);
+                break;
+            default:
+                solverColoring.solve(null, timeLimitMillis);
+        }
+        System.err.println("total: " + (System.currentTimeMillis() - start) + " ms");
     }
 
 
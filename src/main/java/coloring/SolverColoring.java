@@ -7,143 +7,288 @@ import org.chocosolver.solver.Solution;
 import org.chocosolver.solver.exception.SolverException;
 import org.chocosolver.solver.search.loop.monitors.IMonitorSolution;
 import org.chocosolver.solver.search.strategy.Search;
+import org.chocosolver.solver.search.strategy.selectors.values.IntValueSelector;
+import org.chocosolver.solver.search.strategy.selectors.variables.FirstFail;
 import org.chocosolver.solver.variables.IntVar;
 
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Created by Leo on 08/12/2016.
  */
 @Data
-@AllArgsConstructor
 public class SolverColoring {
 
-    private int nodesSize;
-    private int edgesSize;
-    private int[][] edges;
-    private boolean[][] matrixEdges;
+    private final Graph graph;
 
-    private static int TIME_LIMIT_SECONDS = 200;
+    // Enumerate every optimal coloring instead of stopping at the first proven optimum
+    private boolean allOptimalSolutions = false;
+    // Stop as soon as a coloring with at most this number of colors is found (0 to prove the optimum)
+    private int targetColors = 0;
+    // Receives every improving coloring as soon as it is found
+    private Consumer<int[]> solutionSink;
+
+    // Warm start the model with a quick DSatur coloring
+    private boolean warmStart = true;
+    // Precolor a heuristic clique and bound the number of colors from below by its size
+    private boolean cliqueBound = true;
+    // Clique of the graph found beforehand, searched for by the first solve when null
+    private int[] clique;
+    // When the graph is a reduced graph, maps its colorings back to the instance graph before printing them
+    private GraphReduction reduction;
+
+    static int TIME_LIMIT_SECONDS = 200;
+    private static final long WARM_START_MILLIS = 1000;
+    private static final int CLIQUE_STARTS = 100;
+    private static final int CLIQUE_ITERATIONS = 20000;
+    private static final long SEED = 1;
 
     public void solve() {
-        //Create model
-        Model model = new Model();
+        solve(null, TIME_LIMIT_SECONDS * 1000L);
+    }
 
-        // Add objective function
-        Objective objective = new Objective(model).addObjective();
-        IntVar[] nodesColor = objective.getNodesColor();
-        Integer[] orderedNodesByDegrees = objective.getOrderedNodesByDregrees();
+    /**
+     * Solve the CP model. A heuristic coloring (the given incumbent, e.g. found by the tabu search, or a quick
+     * DSatur pre-pass) bounds the color domains and is the first branch explored by the search, while a clique,
+     * precolored with distinct colors, bounds the number of colors from below (unless cliqueBound is off).
+     */
+    public void solve(int[] incumbent, long timeLimitMillis) {
+        long start = System.currentTimeMillis();
 
-        // Add constraints
-        new Constraints(orderedNodesByDegrees, model, nodesColor).addConstraints();
+        if (incumbent == null && warmStart)
+            incumbent = new GreedyColoring(graph, 1, 1, SEED).solve(WARM_START_MILLIS);
+        int[] clique = findClique();
+        int lowerBound = clique.length;
+
+        int maxColors = graph.getNodesSize();
+        if (incumbent != null) {
+            if (solutionSink != null)
+                solutionSink.accept(incumbent);
+            maxColors = Colorings.countColors(incumbent);
+            if (maxColors <= lowerBound) {
+                printSolution(incumbent, true);
+                return;
+            }
+            incumbent = Colorings.relabel(incumbent, symmetryOrder(clique));
+        }
+
+        //Create model
+        ColoringModel coloringModel = buildModel(clique, maxColors);
+        Model model = coloringModel.getModel();
+        IntVar[] nodesColor = coloringModel.getNodesColor();
 
         //Configure solver
         org.chocosolver.solver.Solver solver = model.getSolver();
-        solver.limitTime(TIME_LIMIT_SECONDS * 1000);
-        solver.setSearch(Search.minDomLBSearch(nodesColor));
+        solver.limitTime(Math.max(1, timeLimitMillis - (System.currentTimeMillis() - start)));
+        setSearch(coloringModel, incumbent);
         final Solution solutionVar = new Solution(model, nodesColor);
-        final Solution solutionObjective = new Solution(model, objective.getObjectiveExpression());
         solver.plugMonitor((IMonitorSolution) () -> {
-            solutionObjective.record();
             solutionVar.record();
+            if (solutionSink != null) {
+                int[] colors = new int[nodesColor.length];
+                for (int i = 0; i < nodesColor.length; i++) {
+                    colors[i] = nodesColor[i].getValue();
+                }
+                solutionSink.accept(colors);
+            }
         });
 
         //Optimize
-        solver.findAllOptimalSolutions(objective.getObjectiveExpression(), Model.MINIMIZE);
+        boolean targetReached = false;
+        boolean lowerBoundReached = false;
+        if (allOptimalSolutions) {
+            solver.findAllOptimalSolutions(coloringModel.getLargestColor(), Model.MINIMIZE);
+        } else {
+            // Every call returns a strictly better coloring, until the optimum is proven or the time is over
+            while (solver.solve()) {
+                int colors = coloringModel.getLargestColor().getValue() + 1;
+                if (colors <= lowerBound) {
+                    lowerBoundReached = true;
+                    break;
+                }
+                if (colors <= targetColors) {
+                    targetReached = true;
+                    break;
+                }
+            }
+        }
+        boolean optimal = lowerBoundReached || (!targetReached && !solver.isStopCriterionMet());
 
         //Print
-        printSolution(nodesColor, objective.getObjectiveExpression(), solutionVar, solutionObjective);
+        if (incumbent != null && solver.getSolutionCount() == 0) {
+            printSolution(incumbent, false);
+        } else {
+            printSolution(nodesColor, solutionVar, optimal);
+        }
+    }
+
+    /**
+     * The clique precolored in the model, empty when cliqueBound is off
+     */
+    int[] findClique() {
+        if (!cliqueBound)
+            return new int[0];
+        if (clique == null)
+            clique = new CliqueFinder(graph, SEED).find(CLIQUE_STARTS, CLIQUE_ITERATIONS);
+        return clique;
+    }
+
+    /**
+     * Smallest domain first; when a hint coloring is given, its color is tried first for every node
+     */
+    void setSearch(ColoringModel coloringModel, int[] hint) {
+        IntVar[] nodesColor = coloringModel.getNodesColor();
+        org.chocosolver.solver.Solver solver = coloringModel.getModel().getSolver();
+        if (hint == null) {
+            solver.setSearch(Search.minDomLBSearch(nodesColor));
+            return;
+        }
+        final Map<IntVar, Integer> hintByNode = new IdentityHashMap<>();
+        for (int i = 0; i < nodesColor.length; i++) {
+            hintByNode.put(nodesColor[i], hint[i]);
+        }
+        solver.setSearch(Search.intVarSearch(new FirstFail(coloringModel.getModel()), (IntValueSelector) var -> {
+            Integer value = hintByNode.get(var);
+            return value != null && var.contains(value) ? value : var.getLB();
+        }, nodesColor));
     }
 
-    private void printSolution(IntVar[] nodesColor, IntVar objective, Solution solutionVar, Solution solutionObjective) {
+    /**
+     * Build the Choco model with colors in [0, maxColors - 1], the clique nodes precolored with 0..k-1
+     */
+    ColoringModel buildModel(int[] clique, int maxColors) {
+        Model model = new Model();
+
+        // Add objective function
+        Objective objective = new Objective(model, clique, maxColors).addObjective();
+        IntVar[] nodesColor = objective.getNodesColor();
+        int[] orderedNodesByDegrees = objective.getOrderedNodesByDregrees();
+
+        // Add constraints
+        new Constraints(orderedNodesByDegrees, model, nodesColor, objective.getObjectiveExpression(), maxColors)
+                .addConstraints();
+
+        return new ColoringModel(model, nodesColor, objective.getObjectiveExpression());
+    }
+
+    /**
+     * Order of the symmetry breaking: the clique nodes first, then the other nodes by decreasing degree
+     */
+    int[] symmetryOrder(int[] clique) {
+        int[] order = new int[graph.getNodesSize()];
+        boolean[] inClique = new boolean[graph.getNodesSize()];
+        int size = 0;
+        for (int node : clique) {
+            order[size++] = node;
+            inClique[node] = true;
+        }
+        for (int node : graph.getNodesOrderedByDegree()) {
+            if (!inClique[node])
+                order[size++] = node;
+        }
+        return order;
+    }
+
+    private void printSolution(IntVar[] nodesColor, Solution solutionVar, boolean optimal) {
         try {
-            System.out.println((solutionObjective.getIntVal(objective) + 1) + " 1");
-            for (int i = 0; i < nodesSize; i++) {
-                System.out.print(solutionVar.getIntVal(nodesColor[i]) + " ");
+            int[] colors = new int[graph.getNodesSize()];
+            for (int i = 0; i < graph.getNodesSize(); i++) {
+                colors[i] = solutionVar.getIntVal(nodesColor[i]);
             }
-            System.out.println();
+            printSolution(colors, optimal);
         }  catch (SolverException e) {
             System.out.println("Solution not founded.");
         }
     }
 
+    /**
+     * Print the coloring in the assignment output format: number of colors, optimality flag and the node colors
+     */
+    public void printSolution(int[] colors, boolean optimal) {
+        if (reduction != null)
+            colors = reduction.expand(colors);
+        System.out.println(Colorings.format(colors, optimal));
+    }
+
 
 
     @Data
     private class Objective {
 
-        private Integer[] orderedNodesByDregrees;
-        private int node_with_highest_degree;
+        private int[] orderedNodesByDregrees;
+        private int[] clique;
         private Model model;
         private IntVar[] nodesColor;
         private IntVar objectiveExpression;
+        private int maxColors;
 
-        public Objective(Model model) {
+        public Objective(Model model, int[] clique, int maxColors) {
             this.model = model;
+            this.clique = clique;
+            this.maxColors = maxColors;
         }
 
         public Objective addObjective() {
 
-            orderedNodesByDregrees = getNodeOrderedByDegree(nodesSize, matrixEdges);
-            node_with_highest_degree = orderedNodesByDregrees[0];
+            int nodesSize = graph.getNodesSize();
+            orderedNodesByDregrees = symmetryOrder(clique);
 
             nodesColor = new IntVar[nodesSize];
+            for (int j = 0; j < clique.length; j++) { //Precolor the clique with distinct colors
+                nodesColor[clique[j]] = model.intVar("node:" + clique[j], j, j);
+            }
             for (int i = 0; i < nodesSize; i++) {
-                if (i == node_with_highest_degree) { //Select the with highest degree
-                    nodesColor[i] = model.intVar("node:0",0, 0);
-                } else if (matrixEdges[node_with_highest_degree][i]) { //Select the adjacent to the highest degree
-                    nodesColor[i] = model.intVar("node:" + i, 1, nodesSize - 1);
-                } else { //Select other nodes
-                    nodesColor[i] = model.intVar("node:" + i, 0, nodesSize - 1);
+                if (nodesColor[i] == null) {
+                    nodesColor[i] = model.intVar("node:" + i, 0, maxColors - 1);
                 }
             }
 
-            //Minimize the largest node color
-            objectiveExpression = model.intVar("largest_color", 0, nodesSize - 1);
-            objectiveExpression.eq(nodesColor[0].max(nodesColor)).post();
+            //Minimize the largest node color, linked to the colors by the symmetry constraints.
+            //The clique needs as many colors as nodes.
+            objectiveExpression = model.intVar("largest_color", Math.max(0, clique.length - 1), maxColors - 1);
             model.setObjective(Model.MINIMIZE, objectiveExpression);
 
             return this;
         }
-
-        private Integer[] getNodeOrderedByDegree(int nodesSize, boolean[][] matrixEdges) {
-            Integer[] nodes = new Integer[nodesSize];
-            final int[] degree = new int[nodesSize];
-            for (int i = 0; i < nodesSize; i++) {
-                nodes[i] = i;
-                for (int j = 0; j < nodesSize; j++)
-                    if (matrixEdges[i][j])
-                        degree[i]++;
-            }
-            Comparator<Integer> c = (a, b) -> (degree[b] - degree[a]);
-            Arrays.sort(nodes, c);
-            return nodes;
-        }
     }
 
     @Data
     @AllArgsConstructor
     private class Constraints {
-        private Integer[] orderedNodesByDregree;
+        private int[] orderedNodesByDregree;
         private Model model;
         private IntVar[] nodesColor;
+        private IntVar largestColor;
+        private int maxColors;
 
 
         public void addConstraints() {
             // Colors of adjacent nodes must be different
-            for (int i = 0; i < edgesSize; i++) {
-                model.arithm(nodesColor[edges[i][0]], "!=", nodesColor[edges[i][1]]).post();
+            int[] offsets = graph.getOffsets();
+            int[] neighbors = graph.getNeighbors();
+            for (int u = 0; u < graph.getNodesSize(); u++) {
+                for (int k = offsets[u]; k < offsets[u + 1]; k++) {
+                    if (neighbors[k] > u)
+                        model.arithm(nodesColor[u], "!=", nodesColor[neighbors[k]]).post();
+                }
             }
 
-            // Handle symmetry
-            for (int i = 1; i < nodesSize; i++) {
-                final IntVar[] vector = new IntVar[i];
-                for (int j = 0; j < i; j++) {
-                    vector[j] = nodesColor[orderedNodesByDregree[j]];
-                }
-                nodesColor[orderedNodesByDregree[i]].le(vector[0].max(vector).add(1)).post();
+            // Handle symmetry: a node uses at most one color more than the nodes before it (clique then degree order).
+            // The max over the previous nodes is chained, prefix_max:i = max(prefix_max:i-1, color i),
+            // so the model has O(n) variables and constraints.
+            IntVar prefixMax = nodesColor[orderedNodesByDregree[0]];
+            for (int i = 1; i < graph.getNodesSize(); i++) {
+                IntVar color = nodesColor[orderedNodesByDregree[i]];
+                model.arithm(color, "<=", prefixMax, "+", 1).post();
+                IntVar nextPrefixMax = model.intVar("prefix_max:" + i, 0, Math.min(i, maxColors - 1));
+                model.max(nextPrefixMax, prefixMax, color).post();
+                prefixMax = nextPrefixMax;
             }
+
+            // The last prefix max is the largest color
+            model.arithm(largestColor, "=", prefixMax).post();
         }
     }
 }
@@ -0,0 +1,218 @@
+package coloring;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tabucol local search (Hertz and de Werra) for graph coloring.
+ *
+ * For a fixed k the search moves one conflicting node to another color, picking the best non tabu move
+ * (or a tabu move that improves the best number of conflicts found, aspiration). The conflict table
+ * gamma[node * k + color] counts the neighbors of node with the given color, so a move is evaluated in O(1)
+ * and applied in O(degree) without allocation. The driver keeps removing one color while it succeeds.
+ */
+public class TabuColoring {
+
+    // Dynamic tenure: random(0..TENURE_RANDOM) + TENURE_FACTOR * conflicting nodes
+    private static final int TENURE_RANDOM = 10;
+    private static final double TENURE_FACTOR = 0.6;
+    // Deadline is checked every (TIME_CHECK_MASK + 1) iterations
+    private static final int TIME_CHECK_MASK = 0x3FF;
+    // Largest conflict table (nodes * colors entries) an array can hold
+    private static final long MAX_TABLE_SIZE = Integer.MAX_VALUE - 8;
+
+    private final Graph graph;
+    private final int[] offsets;
+    private final int[] neighbors;
+    private final int nodesSize;
+    private final Random random;
+
+    // Search state, allocated once for the largest k
+    private int[] gamma;
+    private long[] tabu;
+    private final int[] conflicting;
+    private final int[] conflictingPosition;
+    private int conflictingSize;
+    private long iterations;
+
+    private int lowerBound = 1;
+
+    public TabuColoring(Graph graph, long seed) {
+        this.graph = graph;
+        this.offsets = graph.getOffsets();
+        this.neighbors = graph.getNeighbors();
+        this.nodesSize = graph.getNodesSize();
+        this.random = new Random(seed);
+        this.conflicting = new int[nodesSize];
+        this.conflictingPosition = new int[nodesSize];
+    }
+
+    /**
+     * Number of colors below which the driver does not try to go (e.g. a clique size)
+     */
+    public TabuColoring setLowerBound(int lowerBound) {
+        this.lowerBound = Math.max(1, lowerBound);
+        return this;
+    }
+
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Decrease the number of colors, starting from the given legal coloring (or a greedy one when null),
+     * until a k-coloring is not found before the time limit. Returns the best legal coloring.
+     */
+    public int[] solve(int[] initial, long timeLimitMillis) {
+        long deadline = System.currentTimeMillis() + timeLimitMillis;
+        int[] best = initial != null ? initial.clone() : Colorings.greedy(graph, graph.getNodesOrderedByDegree());
+        int k = Colorings.countColors(best);
+
+        if (k > 1 && tableSize(k - 1) > MAX_TABLE_SIZE) {
+            System.err.println("tabucol: the conflict table of " + nodesSize + " nodes with " + (k - 1)
+                    + " colors does not fit in an array");
+            return best;
+        }
+
+        int[] colors = best.clone();
+        while (k - 1 >= lowerBound && System.currentTimeMillis() < deadline) {
+            k--;
+            // Move the nodes with the removed color to a random remaining color
+            for (int u = 0; u < nodesSize; u++) {
+                if (colors[u] >= k)
+                    colors[u] = random.nextInt(k);
+            }
+            if (!colorWith(k, colors, deadline))
+                break;
+            best = colors.clone();
+            System.err.println("tabucol: " + k + " colors after " + iterations + " moves");
+        }
+        return best;
+    }
+
+    private long tableSize(int k) {
+        return (long) nodesSize * k;
+    }
+
+    /**
+     * Search a legal k-coloring starting from colors (every color must be lower than k).
+     * Returns true, with colors updated in place, when one is found before the deadline.
+     */
+    public boolean colorWith(int k, int[] colors, long deadline) {
+        long size = tableSize(k);
+        if (size > MAX_TABLE_SIZE)
+            throw new IllegalArgumentException("The conflict table of " + nodesSize + " nodes with " + k
+                    + " colors has " + size + " entries, more than an array holds");
+        if (gamma == null || gamma.length < size) {
+            gamma = new int[(int) size];
+            tabu = new long[(int) size];
+        } else {
+            Arrays.fill(gamma, 0, (int) size, 0);
+            Arrays.fill(tabu, 0, (int) size, 0);
+        }
+
+        int conflicts = 0;
+        conflictingSize = 0;
+        for (int u = 0; u < nodesSize; u++) {
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                gamma[u * k + colors[neighbors[e]]]++;
+            }
+            conflicts += gamma[u * k + colors[u]];
+            conflictingPosition[u] = -1;
+            if (gamma[u * k + colors[u]] > 0)
+                addConflicting(u);
+        }
+        conflicts /= 2;
+        int bestConflicts = conflicts;
+
+        long iteration = 0;
+        while (conflicts > 0) {
+            if ((++iteration & TIME_CHECK_MASK) == 0 && System.currentTimeMillis() >= deadline) {
+                iterations += iteration;
+                return false;
+            }
+
+            // Best move among the conflicting nodes
+            int bestNode = -1;
+            int bestColor = -1;
+            int bestDelta = Integer.MAX_VALUE;
+            int ties = 0;
+            for (int i = 0; i < conflictingSize; i++) {
+                int u = conflicting[i];
+                int base = u * k;
+                int current = gamma[base + colors[u]];
+                for (int c = 0; c < k; c++) {
+                    if (c == colors[u])
+                        continue;
+                    int delta = gamma[base + c] - current;
+                    if (delta > bestDelta)
+                        continue;
+                    if (tabu[base + c] > iteration && conflicts + delta >= bestConflicts)
+                        continue;
+                    if (delta < bestDelta) {
+                        bestDelta = delta;
+                        bestNode = u;
+                        bestColor = c;
+                        ties = 1;
+                    } else if (random.nextInt(++ties) == 0) {
+                        bestNode = u;
+                        bestColor = c;
+                    }
+                }
+            }
+
+            if (bestNode < 0) {
+                // Every move is tabu: perturb a random conflicting node
+                bestNode = conflicting[random.nextInt(conflictingSize)];
+                bestColor = random.nextInt(k - 1);
+                if (bestColor >= colors[bestNode])
+                    bestColor++;
+                bestDelta = gamma[bestNode * k + bestColor] - gamma[bestNode * k + colors[bestNode]];
+            }
+
+            int oldColor = colors[bestNode];
+            move(bestNode, oldColor, bestColor, k, colors);
+            conflicts += bestDelta;
+            tabu[bestNode * k + oldColor] = iteration + random.nextInt(TENURE_RANDOM) + (long) (TENURE_FACTOR * conflictingSize);
+            if (conflicts < bestConflicts)
+                bestConflicts = conflicts;
+        }
+        iterations += iteration;
+        return true;
+    }
+
+    private void move(int u, int oldColor, int newColor, int k, int[] colors) {
+        colors[u] = newColor;
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            int v = neighbors[e];
+            int base = v * k;
+            gamma[base + oldColor]--;
+            gamma[base + newColor]++;
+            if (colors[v] == oldColor && gamma[base + oldColor] == 0)
+                removeConflicting(v);
+            else if (colors[v] == newColor && gamma[base + newColor] == 1)
+                addConflicting(v);
+        }
+        if (gamma[u * k + newColor] > 0)
+            addConflicting(u);
+        else
+            removeConflicting(u);
+    }
+
+    private void addConflicting(int u) {
+        if (conflictingPosition[u] >= 0)
+            return;
+        conflictingPosition[u] = conflictingSize;
+        conflicting[conflictingSize++] = u;
+    }
+
+    private void removeConflicting(int u) {
+        int position = conflictingPosition[u];
+        if (position < 0)
+            return;
+        int last = conflicting[--conflictingSize];
+        conflicting[position] = last;
+        conflictingPosition[last] = position;
+        conflictingPosition[u] = -1;
+    }
+}
@@ -0,0 +1,206 @@
+package facility;
+
+import gurobi.GRB;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import gurobi.GRBModel;
+
+import java.util.Arrays;
+
+/**
+ * Customer aggregation for facility location instances too large for the MIP.
+ *
+ * The customers are bucketed on a grid of about targetSize non empty cells, and the customers of a cell are packed
+ * into super-customers whose demand stays under MAX_DEMAND_SHARE of the median capacity (a single customer may
+ * exceed it), so that a super-customer still fits in most facilities. A super-customer sits at the centroid of its
+ * members, has their total demand and their number as weight: serving it from p costs that many times the distance
+ * from the centroid to p.
+ *
+ * By the triangle inequality, the cost of serving a customer from p and the cost of serving it from its centroid
+ * differ by at most their distance, so the true cost of a solution serving every super-customer from one facility is
+ * within the error bound, the sum of those distances, of its aggregated cost.
+ *
+ * The aggregated MIP is solved from the regret start, every customer then goes to the facility of its super-customer,
+ * which respects the capacities since the demands add up. Super-customers are big items for the regret greedy, which
+ * may find no room for one of them: the MIP then runs without start, and when it finds no solution either, the
+ * customers are placed by the regret start of the original instance. The repair moves the customers to a cheaper open
+ * facility with room and the local search polishes the result.
+ */
+public class AggregatedFacility {
+
+    private static final double MAX_DEMAND_SHARE = 0.5;
+    private static final int REPAIR_CANDIDATES = 20;
+    private static final long SEED = 1;
+
+    private final FacilityInstance instance;
+    private final int nFacilities;
+    private final int nCustomers;
+    // Super-customer of every customer
+    private final int[] clusterOf;
+    private final FacilityInstance aggregated;
+    private final double errorBound;
+
+    public AggregatedFacility(FacilityInstance instance, int targetSize) {
+        this.instance = instance;
+        nFacilities = instance.getFacilitiesSize();
+        nCustomers = instance.getCustomersSize();
+        clusterOf = new int[nCustomers];
+        int size = cluster(Math.max(1, targetSize));
+
+        double[] demand = new double[size];
+        double[] x = new double[size];
+        double[] y = new double[size];
+        double[] weight = new double[size];
+        for (int w = 0; w < nCustomers; w++) {
+            int c = clusterOf[w];
+            demand[c] += instance.getDemand()[w];
+            x[c] += instance.getCustomerX()[w];
+            y[c] += instance.getCustomerY()[w];
+            weight[c]++;
+        }
+        for (int c = 0; c < size; c++) {
+            x[c] /= weight[c];
+            y[c] /= weight[c];
+        }
+        aggregated = new FacilityInstance(instance.getSetupCost(), instance.getCapacity(), instance.getFacilityX(),
+                instance.getFacilityY(), demand, x, y, weight);
+
+        double bound = 0;
+        for (int w = 0; w < nCustomers; w++) {
+            double dx = instance.getCustomerX()[w] - x[clusterOf[w]];
+            double dy = instance.getCustomerY()[w] - y[clusterOf[w]];
+            bound += Math.sqrt(dx * dx + dy * dy);
+        }
+        errorBound = bound;
+    }
+
+    public FacilityInstance getAggregated() {
+        return aggregated;
+    }
+
+    public int[] getClusterOf() {
+        return clusterOf;
+    }
+
+    public double getErrorBound() {
+        return errorBound;
+    }
+
+    /**
+     * Solve the aggregated MIP restricted to the candidatesSize nearest facilities (0 for all of them) within the
+     * time limit, then disaggregate and improve the solution for repairMillis
+     */
+    public FacilitySolution solve(GRBEnv env, int candidatesSize, long timeLimitMillis, long startMillis,
+                                  long repairMillis) throws GRBException {
+        long deadline = System.currentTimeMillis() + timeLimitMillis;
+        SolverFacilityLocation solver = new SolverFacilityLocation(aggregated);
+        FacilitySolution start = null;
+        try {
+            start = solver.warmStart(startMillis);
+            solver.setStart(start);
+        } catch (IllegalStateException e) {
+            System.err.println("facility aggregation: no regret start, " + e.getMessage());
+        }
+        int k = candidatesSize <= 0 ? nFacilities : Math.min(candidatesSize, nFacilities);
+        FacilityModel facilityModel = solver.buildModel(env, solver.getCandidates(k));
+        GRBModel model = facilityModel.getModel();
+        int[] clusterAssignment = start != null ? start.getAssignment() : null;
+        try {
+            model.getEnv().set(GRB.DoubleParam.TimeLimit, Math.max(1, deadline - System.currentTimeMillis()) / 1000.0);
+            model.optimize();
+            if (model.get(GRB.IntAttr.SolCount) > 0)
+                clusterAssignment = solver.readAssignment(model, facilityModel.getY(), facilityModel.getCandidates());
+            System.err.println("facility aggregation: " + nCustomers + " customers in "
+                    + aggregated.getCustomersSize() + " super-customers, " + model.get(GRB.IntAttr.NumVars)
+                    + " vars instead of " + ((long) nCustomers * k + nFacilities) + ", aggregated objective "
+                    + (model.get(GRB.IntAttr.SolCount) > 0 ? model.get(GRB.DoubleAttr.ObjVal)
+                    : start != null ? start.getCost() : "none")
+                    + ", error bound " + errorBound);
+        } finally {
+            model.dispose();
+        }
+        if (clusterAssignment == null)
+            return new SolverFacilityLocation(instance).warmStart(repairMillis);
+        return disaggregate(clusterAssignment, repairMillis);
+    }
+
+    /**
+     * Every customer to the facility of its super-customer, then moved to a cheaper open facility with room and
+     * improved by the local search for repairMillis
+     */
+    FacilitySolution disaggregate(int[] clusterAssignment, long repairMillis) {
+        double[] demand = instance.getDemand();
+        double[] capacity = instance.getCapacity();
+        int[] assignment = new int[nCustomers];
+        double[] load = new double[nFacilities];
+        for (int w = 0; w < nCustomers; w++) {
+            assignment[w] = clusterAssignment[clusterOf[w]];
+            load[assignment[w]] += demand[w];
+        }
+
+        int[][] candidates = SolverFacilityLocation.nearest(instance.getCustomerX(), instance.getCustomerY(),
+                instance.getFacilityX(), instance.getFacilityY(), REPAIR_CANDIDATES);
+        // A facility emptied on the way is closed: it saved its setup cost and takes no one else
+        for (int w = 0; w < nCustomers; w++) {
+            int from = assignment[w];
+            double best = instance.assignmentCost(w, from);
+            for (int p : candidates[w]) {
+                if (p != from && load[p] > 0 && load[p] + demand[w] <= capacity[p]
+                        && instance.assignmentCost(w, p) < best) {
+                    best = instance.assignmentCost(w, p);
+                    assignment[w] = p;
+                }
+            }
+            load[from] -= demand[w];
+            load[assignment[w]] += demand[w];
+        }
+        return new LocalSearchFacility(instance, SEED).solve(assignment, repairMillis);
+    }
+
+    // Fill clusterOf, returns the number of super-customers
+    private int cluster(int targetSize) {
+        double[] x = instance.getCustomerX();
+        double[] y = instance.getCustomerY();
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int w = 0; w < nCustomers; w++) {
+            minX = Math.min(minX, x[w]);
+            minY = Math.min(minY, y[w]);
+            maxX = Math.max(maxX, x[w]);
+            maxY = Math.max(maxY, y[w]);
+        }
+        double area = Math.max(maxX - minX, 1e-9) * Math.max(maxY - minY, 1e-9);
+        double side = Math.sqrt(area / targetSize);
+        long columns = (long) ((maxX - minX) / side) + 1;
+
+        // Customers sorted by cell: the cell in the high bits, the customer in the low ones
+        long[] keys = new long[nCustomers];
+        for (int w = 0; w < nCustomers; w++) {
+            long cell = (long) ((y[w] - minY) / side) * columns + (long) ((x[w] - minX) / side);
+            keys[w] = cell << 32 | w;
+        }
+        Arrays.sort(keys);
+
+        double[] capacities = instance.getCapacity().clone();
+        Arrays.sort(capacities);
+        double maxDemand = MAX_DEMAND_SHARE * capacities[capacities.length / 2];
+
+        int size = 0;
+        long cell = -1;
+        double demand = 0;
+        for (long key : keys) {
+            int w = (int) key;
+            double d = instance.getDemand()[w];
+            if (key >>> 32 != cell || demand + d > maxDemand) {
+                cell = key >>> 32;
+                demand = 0;
+                size++;
+            }
+            clusterOf[w] = size - 1;
+            demand += d;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,83 @@
+package facility;
+
+import gurobi.GRB;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import gurobi.GRBModel;
+import input.HandleFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compare the facility model on all the customers with the model on super-customers followed by the
+ * disaggregation and repair, both from the regret start and restricted to the k nearest facilities.
+ *
+ * Usage: java facility.AggregationBenchmark [-candidates=20] [-time=60] [-aggregate=0] [files...]
+ *
+ * -aggregate is the target number of super-customers, 0 for half the customers. Prints the number of (super)
+ * customers, the model variables, the wall time, the objective of the customers and the aggregation error bound.
+ */
+public class AggregationBenchmark {
+
+    private static final String[] DEFAULT_INSTANCES = {
+            "assignament/facility/data/fl_1000_2",
+            "assignament/facility/data/fl_2000_2",
+            "assignament/facility/data/fl_4000_1"
+    };
+
+    private static final long START_IMPROVEMENT_MILLIS = 2000;
+    private static final long REPAIR_MILLIS = 2000;
+
+    public static void main(String[] args) throws GRBException {
+        int candidatesSize = Integer.parseInt(HandleFile.getOption("candidates", "20", args));
+        long timeLimitMillis = (long) (1000 * Double.parseDouble(HandleFile.getOption("time", "60", args)));
+        int aggregateSize = Integer.parseInt(HandleFile.getOption("aggregate", "0", args));
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("-"))
+                files.add(arg);
+        }
+        if (files.isEmpty())
+            files.addAll(Arrays.asList(DEFAULT_INSTANCES));
+
+        GRBEnv env = new GRBEnv();
+        env.set(GRB.IntParam.OutputFlag, 0);
+
+        System.out.printf("%-12s %-10s %10s %12s %10s %14s %12s%n", "instance", "model", "customers", "vars",
+                "wall(s)", "objective", "bound");
+        for (String file : files) {
+            FacilityInstance instance = new ParserFile("-file=" + file).invoke().getInstance();
+            String name = new File(file).getName();
+            int k = Math.min(candidatesSize, instance.getFacilitiesSize());
+
+            // Full model, same start and time limit
+            long start = System.currentTimeMillis();
+            SolverFacilityLocation solver = new SolverFacilityLocation(instance);
+            solver.setStart(solver.warmStart(START_IMPROVEMENT_MILLIS));
+            FacilityModel facilityModel = solver.buildModel(env, solver.getCandidates(k));
+            GRBModel model = facilityModel.getModel();
+            model.getEnv().set(GRB.DoubleParam.TimeLimit,
+                    Math.max(1, timeLimitMillis - (System.currentTimeMillis() - start)) / 1000.0);
+            model.optimize();
+            System.out.printf("%-12s %-10s %10d %12d %10.2f %14s %12s%n", name, "full", instance.getCustomersSize(),
+                    model.get(GRB.IntAttr.NumVars), (System.currentTimeMillis() - start) / 1000.0,
+                    model.get(GRB.IntAttr.SolCount) > 0 ? String.format("%.1f", model.get(GRB.DoubleAttr.ObjVal))
+                            : "none", "-");
+            model.dispose();
+
+            start = System.currentTimeMillis();
+            int target = aggregateSize > 0 ? aggregateSize : instance.getCustomersSize() / 2;
+            AggregatedFacility aggregation = new AggregatedFacility(instance, target);
+            FacilitySolution solution = aggregation.solve(env, k, timeLimitMillis, START_IMPROVEMENT_MILLIS,
+                    REPAIR_MILLIS);
+            System.out.printf("%-12s %-10s %10d %12d %10.2f %14.1f %12.1f%n", name, "aggregated",
+                    aggregation.getAggregated().getCustomersSize(),
+                    (long) aggregation.getAggregated().getCustomersSize() * k + instance.getFacilitiesSize(),
+                    (System.currentTimeMillis() - start) / 1000.0, solution.getCost(), aggregation.getErrorBound());
+        }
+        env.dispose();
+    }
+}
@@ -0,0 +1,446 @@
+package facility;
+
+import gurobi.GRB;
+import gurobi.GRBCallback;
+import gurobi.GRBConstr;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import gurobi.GRBLinExpr;
+import gurobi.GRBModel;
+import gurobi.GRBVar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benders decomposition of the facility location problem with fractional assignments.
+ *
+ * The master problem only has the open binaries x[p] and the assignment cost theta[w] of every customer, with the
+ * total capacity covering the total demand. Its integer solutions are checked in a MIPSOL callback, which adds lazy
+ * cuts:
+ * - customer cuts, one independent subproblem per customer solved in parallel: without capacities, w is served by its
+ *   cheapest open facility k and theta[w] >= d(w, k) - sum over p cheaper than k of (d(w, k) - d(w, p)) x[p];
+ * - when no customer cut is violated, the optimality cut of the capacitated transportation LP on the open facilities,
+ *   whose capacity duals pi[p] and assignment duals v[w] give sum theta[w] >= sum v[w] + sum over p of
+ *   (capacity[p] pi[p] - sum over w of max(0, v[w] + demand[w] pi[p] - d(w, p))) x[p], valid for any x with pi = 0
+ *   on the closed facilities. The capacities couple the customers, this subproblem is a single LP.
+ *
+ * When the transportation LP is not solved to optimality (time limit, numerics), the open set cannot be checked and
+ * is cut off by a no-good cut, so that an unverified solution never becomes the incumbent.
+ *
+ * The master optimum bounds the problem from below, unless a no-good cut was needed. Each customer must then be
+ * served by a single facility: the compact MIP restricted to the open facilities assigns them, within the smaller of
+ * ASSIGNMENT_SECONDS and ASSIGNMENT_SHARE of the budget, and the start is kept when it is cheaper.
+ */
+public class BendersFacility {
+
+    private static final double EPSILON = 1e-6;
+    private static final double ASSIGNMENT_SECONDS = 30;
+    private static final double ASSIGNMENT_SHARE = 0.25;
+    private static final long MIN_MASTER_MILLIS = 1000;
+    private static final int REGRET_SIZE = 3;
+
+    private final FacilityInstance instance;
+    private final int nFacilities;
+    private final int nCustomers;
+    private final double[] capacity;
+    private final double[] demand;
+    private final int threads;
+
+    private GRBVar[] x;
+    private GRBVar[] theta;
+    private double lowerBound = Double.NEGATIVE_INFINITY;
+    private int customerCuts;
+    private int capacityCuts;
+    private int noGoodCuts;
+
+    public BendersFacility(FacilityInstance instance, int threads) {
+        this.instance = instance;
+        nFacilities = instance.getFacilitiesSize();
+        nCustomers = instance.getCustomersSize();
+        capacity = instance.getCapacity();
+        demand = instance.getDemand();
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Bound of the master, only valid when no no-good cut was added
+     */
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    public int getNoGoodCuts() {
+        return noGoodCuts;
+    }
+
+    /**
+     * Solve the master from the open facilities of start within the time limit, then assign the customers. A budget
+     * too small for the master returns start.
+     */
+    public FacilitySolution solve(GRBEnv env, FacilitySolution start, long timeLimitMillis) throws GRBException {
+        long deadline = System.currentTimeMillis() + timeLimitMillis;
+        long assignmentMillis = (long) Math.min(1000 * ASSIGNMENT_SECONDS, ASSIGNMENT_SHARE * timeLimitMillis);
+        long masterMillis = timeLimitMillis - assignmentMillis;
+        if (masterMillis < MIN_MASTER_MILLIS) {
+            System.err.println("facility benders: " + timeLimitMillis + " ms is too short for the master, start kept");
+            return start;
+        }
+        GRBModel master = buildMaster(env, start);
+        GRBEnv subEnv = new GRBEnv();
+        subEnv.set(GRB.IntParam.OutputFlag, 0);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        double[] open;
+        try {
+            master.getEnv().set(GRB.IntParam.LazyConstraints, 1);
+            master.getEnv().set(GRB.DoubleParam.TimeLimit,
+                    Math.max(1, deadline - System.currentTimeMillis() - assignmentMillis) / 1000.0);
+            master.setCallback(new Cuts(pool, subEnv));
+            long begin = System.currentTimeMillis();
+            master.optimize();
+            lowerBound = master.get(GRB.DoubleAttr.ObjBound);
+            System.err.println("facility benders: " + master.get(GRB.IntAttr.NumVars) + " master vars, "
+                    + customerCuts + " customer cuts, " + capacityCuts + " capacity cuts, " + noGoodCuts
+                    + " no-good cuts, bound " + lowerBound
+                    + " in " + (System.currentTimeMillis() - begin) + " ms");
+            if (master.get(GRB.IntAttr.SolCount) == 0)
+                return start;
+            open = master.get(GRB.DoubleAttr.X, x);
+        } finally {
+            master.dispose();
+            subEnv.dispose();
+            pool.shutdownNow();
+        }
+
+        FacilitySolution assigned = assign(env, open, deadline, assignmentMillis);
+        return assigned != null && assigned.getCost() < start.getCost() ? assigned : start;
+    }
+
+    private GRBModel buildMaster(GRBEnv env, FacilitySolution start) throws GRBException {
+        GRBModel model = new GRBModel(env);
+        model.set(GRB.StringAttr.ModelName, "facility benders");
+        x = new GRBVar[nFacilities];
+        for (int p = 0; p < nFacilities; ++p) {
+            x[p] = model.addVar(0, 1, instance.getSetupCost()[p], GRB.BINARY, "x[" + p + "]");
+        }
+        // theta[w] is at least the distance to the nearest facility
+        double[] costs = new double[nFacilities];
+        theta = new GRBVar[nCustomers];
+        for (int w = 0; w < nCustomers; ++w) {
+            instance.assignmentCosts(w, costs);
+            double nearest = Double.POSITIVE_INFINITY;
+            for (double c : costs) {
+                nearest = Math.min(nearest, c);
+            }
+            theta[w] = model.addVar(nearest, GRB.INFINITY, 1, GRB.CONTINUOUS, "theta[" + w + "]");
+        }
+        model.update();
+        model.set(GRB.IntAttr.ModelSense, GRB.MINIMIZE);
+
+        GRBLinExpr supply = new GRBLinExpr();
+        double total = 0;
+        for (int p = 0; p < nFacilities; ++p) {
+            supply.addTerm(capacity[p], x[p]);
+        }
+        for (int w = 0; w < nCustomers; ++w) {
+            total += demand[w];
+        }
+        model.addConstr(supply, GRB.GREATER_EQUAL, total, "S(capacity) >= S(demand)");
+
+        // Start from the open facilities of start, with their customer cuts already in the master
+        double[] open = new double[nFacilities];
+        for (int p : start.getAssignment()) {
+            open[p] = 1.0;
+        }
+        model.set(GRB.DoubleAttr.Start, x, open);
+        for (int w = 0; w < nCustomers; ++w) {
+            Cut cut = customerCut(w, open, costs);
+            model.addConstr(cut.expression(), GRB.GREATER_EQUAL, cut.constant, "theta(" + w + ")");
+        }
+        model.update();
+        return model;
+    }
+
+    /**
+     * Single facility of every customer among the open ones, by the compact MIP on them (null when it finds none)
+     */
+    private FacilitySolution assign(GRBEnv env, double[] open, long deadline, long assignmentMillis)
+            throws GRBException {
+        int size = 0;
+        int[] facilities = new int[nFacilities];
+        for (int p = 0; p < nFacilities; p++) {
+            if (open[p] > 0.5)
+                facilities[size++] = p;
+        }
+        facilities = Arrays.copyOf(facilities, size);
+        int[] customers = new int[nCustomers];
+        for (int w = 0; w < nCustomers; w++) {
+            customers[w] = w;
+        }
+
+        SolverFacilityLocation solver = new SolverFacilityLocation(instance.restrict(facilities, customers));
+        try {
+            solver.setStart(new RegretGreedyFacility(solver.getInstance(), REGRET_SIZE).solve());
+        } catch (IllegalStateException e) {
+            // Single sourcing does not fit the regret greedy, let the MIP look for a solution
+        }
+        FacilityModel facilityModel = solver.buildModel(env, solver.getCandidates(size));
+        GRBModel model = facilityModel.getModel();
+        try {
+            model.getEnv().set(GRB.DoubleParam.TimeLimit,
+                    Math.max(1, Math.min(assignmentMillis, deadline - System.currentTimeMillis())) / 1000.0);
+            model.optimize();
+            if (model.get(GRB.IntAttr.SolCount) == 0)
+                return null;
+            int[] assignment = solver.readAssignment(model, facilityModel.getY(), facilityModel.getCandidates());
+            for (int w = 0; w < nCustomers; w++) {
+                assignment[w] = facilities[assignment[w]];
+            }
+            return new FacilitySolution(assignment, model.get(GRB.DoubleAttr.ObjVal));
+        } finally {
+            model.dispose();
+        }
+    }
+
+    // Cut of customer w for the open facilities: its cheapest open facility k, discounted by the cheaper ones
+    private Cut customerCut(int w, double[] open, double[] costs) {
+        instance.assignmentCosts(w, costs);
+        double cheapest = Double.POSITIVE_INFINITY;
+        for (int p = 0; p < nFacilities; p++) {
+            if (open[p] > 0.5 && costs[p] < cheapest)
+                cheapest = costs[p];
+        }
+        int size = 0;
+        for (int p = 0; p < nFacilities; p++) {
+            if (costs[p] < cheapest)
+                size++;
+        }
+        Cut cut = new Cut(w, size, cheapest);
+        size = 0;
+        for (int p = 0; p < nFacilities; p++) {
+            if (costs[p] < cheapest) {
+                cut.facilities[size] = p;
+                cut.coefficients[size++] = cheapest - costs[p];
+            }
+        }
+        return cut;
+    }
+
+    // theta[customer] (all of them when customer < 0) + sum of coefficients[i] x[facilities[i]] >= constant
+    private class Cut {
+        private final int customer;
+        private final int[] facilities;
+        private final double[] coefficients;
+        private final double constant;
+
+        private Cut(int customer, int size, double constant) {
+            this.customer = customer;
+            facilities = new int[size];
+            coefficients = new double[size];
+            this.constant = constant;
+        }
+
+        // Lower bound of the theta terms for the open facilities
+        private double rightHandSide(double[] open) {
+            double value = constant;
+            for (int i = 0; i < facilities.length; i++) {
+                value -= coefficients[i] * open[facilities[i]];
+            }
+            return value;
+        }
+
+        private GRBLinExpr expression() {
+            GRBLinExpr expression = new GRBLinExpr();
+            if (customer >= 0) {
+                expression.addTerm(1, theta[customer]);
+            } else {
+                for (GRBVar t : theta) {
+                    expression.addTerm(1, t);
+                }
+            }
+            for (int i = 0; i < facilities.length; i++) {
+                expression.addTerm(coefficients[i], x[facilities[i]]);
+            }
+            return expression;
+        }
+    }
+
+    private class Cuts extends GRBCallback {
+        private final ForkJoinPool pool;
+        private final GRBEnv subEnv;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Cuts(ForkJoinPool pool, GRBEnv subEnv) {
+            this.pool = pool;
+            this.subEnv = subEnv;
+        }
+
+        @Override
+        protected void callback() {
+            try {
+                if (where != GRB.CB_MIPSOL)
+                    return;
+                double[] open = getSolution(x);
+                double[] cost = getSolution(theta);
+                List<Cut> cuts = customerCuts(open, cost);
+                for (Cut cut : cuts) {
+                    addLazy(cut.expression(), GRB.GREATER_EQUAL, cut.constant);
+                }
+                customerCuts += cuts.size();
+                if (!cuts.isEmpty())
+                    return;
+
+                double total = 0;
+                for (double c : cost) {
+                    total += c;
+                }
+                Cut cut = capacityCut(open);
+                if (cut == null) {
+                    addNoGood(open);
+                } else if (total < cut.rightHandSide(open) - EPSILON * Math.max(1, total)) {
+                    addLazy(cut.expression(), GRB.GREATER_EQUAL, cut.constant);
+                    capacityCuts++;
+                }
+            } catch (GRBException e) {
+                System.err.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+            }
+        }
+
+        // Reject the open set: sum of x over the closed facilities - sum over the open ones >= 1 - open ones
+        private void addNoGood(double[] open) throws GRBException {
+            GRBLinExpr expression = new GRBLinExpr();
+            int size = 0;
+            for (int p = 0; p < nFacilities; p++) {
+                if (open[p] > 0.5) {
+                    expression.addTerm(-1, x[p]);
+                    size++;
+                } else {
+                    expression.addTerm(1, x[p]);
+                }
+            }
+            addLazy(expression, GRB.GREATER_EQUAL, 1 - size);
+            noGoodCuts++;
+        }
+
+        // Violated customer cuts, the customers being split among the threads
+        private List<Cut> customerCuts(double[] open, double[] cost) {
+            next.set(0);
+            List<Callable<List<Cut>>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                tasks.add(() -> {
+                    List<Cut> cuts = new ArrayList<>();
+                    double[] costs = new double[nFacilities];
+                    int w;
+                    while ((w = next.getAndIncrement()) < nCustomers) {
+                        Cut cut = customerCut(w, open, costs);
+                        if (cost[w] < cut.rightHandSide(open) - EPSILON * Math.max(1, cost[w]))
+                            cuts.add(cut);
+                    }
+                    return cuts;
+                });
+            }
+            List<Cut> cuts = new ArrayList<>();
+            for (List<Cut> part : invokeAll(tasks)) {
+                cuts.addAll(part);
+            }
+            return cuts;
+        }
+
+        // Optimality cut of the transportation LP on the open facilities (null when it is not solved)
+        private Cut capacityCut(double[] open) throws GRBException {
+            int size = 0;
+            int[] facilities = new int[nFacilities];
+            for (int p = 0; p < nFacilities; p++) {
+                if (open[p] > 0.5)
+                    facilities[size++] = p;
+            }
+            double[] pi = new double[nFacilities];
+            double[] v = new double[nCustomers];
+            GRBModel model = new GRBModel(subEnv);
+            try {
+                GRBVar[][] y = new GRBVar[nCustomers][size];
+                for (int w = 0; w < nCustomers; w++) {
+                    for (int i = 0; i < size; i++) {
+                        y[w][i] = model.addVar(0, GRB.INFINITY, instance.assignmentCost(w, facilities[i]),
+                                GRB.CONTINUOUS, "y[" + w + "][" + facilities[i] + "]");
+                    }
+                }
+                model.update();
+                GRBConstr[] assigned = new GRBConstr[nCustomers];
+                for (int w = 0; w < nCustomers; w++) {
+                    GRBLinExpr expression = new GRBLinExpr();
+                    for (int i = 0; i < size; i++) {
+                        expression.addTerm(1, y[w][i]);
+                    }
+                    assigned[w] = model.addConstr(expression, GRB.EQUAL, 1, "S(y, " + w + ") = 1");
+                }
+                GRBConstr[] capacities = new GRBConstr[size];
+                for (int i = 0; i < size; i++) {
+                    GRBLinExpr expression = new GRBLinExpr();
+                    for (int w = 0; w < nCustomers; w++) {
+                        expression.addTerm(demand[w], y[w][i]);
+                    }
+                    capacities[i] = model.addConstr(expression, GRB.LESS_EQUAL, capacity[facilities[i]],
+                            "S(demand, " + facilities[i] + ") <= Capacity");
+                }
+                model.optimize();
+                if (model.get(GRB.IntAttr.Status) != GRB.OPTIMAL)
+                    return null;
+                for (int w = 0; w < nCustomers; w++) {
+                    v[w] = assigned[w].get(GRB.DoubleAttr.Pi);
+                }
+                for (int i = 0; i < size; i++) {
+                    pi[facilities[i]] = Math.min(0, capacities[i].get(GRB.DoubleAttr.Pi));
+                }
+            } finally {
+                model.dispose();
+            }
+
+            double constant = 0;
+            for (int w = 0; w < nCustomers; w++) {
+                constant += v[w];
+            }
+            // Coefficients of x, moved to the left hand side with theta, the facilities being split among threads
+            Cut cut = new Cut(-1, nFacilities, constant);
+            next.set(0);
+            List<Callable<List<Cut>>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                tasks.add(() -> {
+                    int p;
+                    while ((p = next.getAndIncrement()) < nFacilities) {
+                        double coefficient = capacity[p] * pi[p];
+                        for (int w = 0; w < nCustomers; w++) {
+                            coefficient -= Math.max(0, v[w] + demand[w] * pi[p] - instance.assignmentCost(w, p));
+                        }
+                        cut.facilities[p] = p;
+                        cut.coefficients[p] = -coefficient;
+                    }
+                    return null;
+                });
+            }
+            invokeAll(tasks);
+            return cut;
+        }
+
+        private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package facility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Facility location instance as primitive arrays, indexed by facility p and customer w (0 based), built by the
+ * parser and shared by the engines. The arrays are exposed without copy and must not be modified.
+ * The Facility and Customer objects are only adapters over it.
+ *
+ * A customer can stand for several co-located ones (an aggregated instance), its weight then multiplies its
+ * assignment costs. Without weights every customer counts once.
+ */
+public final class FacilityInstance {
+
+    private final double[] setupCost;
+    private final double[] capacity;
+    private final double[] facilityX;
+    private final double[] facilityY;
+    private final double[] demand;
+    private final double[] customerX;
+    private final double[] customerY;
+    // Number of customers each one stands for, null when they all count once
+    private final double[] weight;
+
+    public FacilityInstance(double[] setupCost, double[] capacity, double[] facilityX, double[] facilityY,
+                            double[] demand, double[] customerX, double[] customerY) {
+        this(setupCost, capacity, facilityX, facilityY, demand, customerX, customerY, null);
+    }
+
+    public FacilityInstance(double[] setupCost, double[] capacity, double[] facilityX, double[] facilityY,
+                            double[] demand, double[] customerX, double[] customerY, double[] weight) {
+        this.setupCost = setupCost;
+        this.capacity = capacity;
+        this.facilityX = facilityX;
+        this.facilityY = facilityY;
+        this.demand = demand;
+        this.customerX = customerX;
+        this.customerY = customerY;
+        this.weight = weight;
+    }
+
+    public static FacilityInstance of(List<Facility> facilities, List<Customer> customers) {
+        int nFacilities = facilities.size();
+        double[] setupCost = new double[nFacilities];
+        double[] capacity = new double[nFacilities];
+        double[] facilityX = new double[nFacilities];
+        double[] facilityY = new double[nFacilities];
+        for (int p = 0; p < nFacilities; p++) {
+            Facility facility = facilities.get(p);
+            setupCost[p] = facility.getSetupCost();
+            capacity[p] = facility.getCapacity();
+            facilityX[p] = facility.getPosition().getX();
+            facilityY[p] = facility.getPosition().getY();
+        }
+        int nCustomers = customers.size();
+        double[] demand = new double[nCustomers];
+        double[] customerX = new double[nCustomers];
+        double[] customerY = new double[nCustomers];
+        for (int w = 0; w < nCustomers; w++) {
+            Customer customer = customers.get(w);
+            demand[w] = customer.getDemand();
+            customerX[w] = customer.getPosition().getX();
+            customerY[w] = customer.getPosition().getY();
+        }
+        return new FacilityInstance(setupCost, capacity, facilityX, facilityY, demand, customerX, customerY);
+    }
+
+    public int getFacilitiesSize() {
+        return setupCost.length;
+    }
+
+    public int getCustomersSize() {
+        return demand.length;
+    }
+
+    public double[] getSetupCost() {
+        return setupCost;
+    }
+
+    public double[] getCapacity() {
+        return capacity;
+    }
+
+    public double[] getFacilityX() {
+        return facilityX;
+    }
+
+    public double[] getFacilityY() {
+        return facilityY;
+    }
+
+    public double[] getDemand() {
+        return demand;
+    }
+
+    public double[] getCustomerX() {
+        return customerX;
+    }
+
+    public double[] getCustomerY() {
+        return customerY;
+    }
+
+    public double[] getWeight() {
+        return weight;
+    }
+
+    /**
+     * Cost of serving customer w from facility p: their Euclidean distance, times the weight of w
+     */
+    public double assignmentCost(int w, int p) {
+        double dx = customerX[w] - facilityX[p];
+        double dy = customerY[w] - facilityY[p];
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        return weight == null ? distance : weight[w] * distance;
+    }
+
+    /**
+     * costs[p]: cost of serving customer w from every facility p, in one loop over the facility arrays
+     */
+    public void assignmentCosts(int w, double[] costs) {
+        double x = customerX[w];
+        double y = customerY[w];
+        for (int p = 0; p < costs.length; p++) {
+            double dx = x - facilityX[p];
+            double dy = y - facilityY[p];
+            costs[p] = Math.sqrt(dx * dx + dy * dy);
+        }
+        if (weight != null) {
+            for (int p = 0; p < costs.length; p++) {
+                costs[p] *= weight[w];
+            }
+        }
+    }
+
+    /**
+     * The given facilities and customers as an instance of their own, indexed by their position in the arrays
+     */
+    public FacilityInstance restrict(int[] facilities, int[] customers) {
+        double[] subSetupCost = new double[facilities.length];
+        double[] subCapacity = new double[facilities.length];
+        double[] subFacilityX = new double[facilities.length];
+        double[] subFacilityY = new double[facilities.length];
+        for (int i = 0; i < facilities.length; i++) {
+            int p = facilities[i];
+            subSetupCost[i] = setupCost[p];
+            subCapacity[i] = capacity[p];
+            subFacilityX[i] = facilityX[p];
+            subFacilityY[i] = facilityY[p];
+        }
+        double[] subDemand = new double[customers.length];
+        double[] subCustomerX = new double[customers.length];
+        double[] subCustomerY = new double[customers.length];
+        double[] subWeight = weight == null ? null : new double[customers.length];
+        for (int i = 0; i < customers.length; i++) {
+            int w = customers[i];
+            subDemand[i] = demand[w];
+            subCustomerX[i] = customerX[w];
+            subCustomerY[i] = customerY[w];
+            if (subWeight != null)
+                subWeight[i] = weight[w];
+        }
+        return new FacilityInstance(subSetupCost, subCapacity, subFacilityX, subFacilityY, subDemand, subCustomerX,
+                subCustomerY, subWeight);
+    }
+
+    /**
+     * Facility objects of the instance, labelled from 1 as in the input file
+     */
+    public List<Facility> getFacilities() {
+        List<Facility> facilities = new ArrayList<>(getFacilitiesSize());
+        for (int p = 0; p < getFacilitiesSize(); p++) {
+            facilities.add(new Facility(p + 1, setupCost[p], capacity[p], new Point(facilityX[p], facilityY[p])));
+        }
+        return facilities;
+    }
+
+    /**
+     * Customer objects of the instance, labelled after the facilities as in the input file
+     */
+    public List<Customer> getCustomers() {
+        List<Customer> customers = new ArrayList<>(getCustomersSize());
+        for (int w = 0; w < getCustomersSize(); w++) {
+            customers.add(new Customer(getFacilitiesSize() + w + 1, demand[w],
+                    new Point(customerX[w], customerY[w])));
+        }
+        return customers;
+    }
+}
@@ -0,0 +1,19 @@
+package facility;
+
+import gurobi.GRBModel;
+import gurobi.GRBVar;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Gurobi facility model: x[p] opens plant p, y[w][j] assigns customer w to plant candidates[w][j]
+ */
+@Data
+@AllArgsConstructor
+class FacilityModel {
+
+    private GRBModel model;
+    private GRBVar[] x;
+    private GRBVar[][] y;
+    private int[][] candidates;
+}
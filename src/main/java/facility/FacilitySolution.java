@@ -0,0 +1,37 @@
+package facility;
+
+/**
+ * Assignment of every customer to a facility (0 based index) and its total cost, shared by the facility engines
+ */
+public final class FacilitySolution {
+
+    private final int[] assignment;
+    private final double cost;
+
+    public FacilitySolution(int[] assignment, double cost) {
+        this.assignment = assignment;
+        this.cost = cost;
+    }
+
+    public int[] getAssignment() {
+        return assignment;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * Assignment output format: the cost and the optimality flag, then the facility of every customer
+     */
+    public String format(boolean optimal) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(cost).append(' ').append(optimal ? 1 : 0).append('\n');
+        for (int w = 0; w < assignment.length; w++) {
+            if (w > 0)
+                builder.append(' ');
+            builder.append(assignment[w]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,470 @@
+package facility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lagrangian relaxation of the assignment constraints S(y, w) = 1, with multipliers lambda[w].
+ *
+ * For fixed multipliers the problem splits by facility: facility p is opened when setup[p] plus the best fractional
+ * knapsack of the customers with a negative reduced cost d(w, p) - lambda[w] is negative. The knapsack is solved
+ * greedily by decreasing saving per unit of demand; being the LP relaxation of the 0-1 knapsack, it keeps the bound
+ * valid. The facilities are solved in parallel on a fork-join pool. The multipliers follow subgradient steps with the
+ * Polyak step size, the step factor being halved when the bound stalls. Every few iterations, the facilities opened
+ * by the relaxation are repaired into a feasible assignment, which gives the upper bound.
+ */
+public class LagrangianFacility {
+
+    private static final int MAX_ITERATIONS = 2000;
+    private static final int STALL_ITERATIONS = 30;
+    private static final int REPAIR_PERIOD = 10;
+    private static final double MIN_STEP_FACTOR = 1e-4;
+    private static final double GAP_TOLERANCE = 1e-6;
+
+    private final FacilityInstance instance;
+    private final int nFacilities;
+    private final int nCustomers;
+    private final double[] setupCost;
+    private final double[] capacity;
+    private final double[] demand;
+    private final int threads;
+
+    private final double[] lambda;
+    // setup cost plus knapsack value of every facility for the current multipliers
+    private final double[] value;
+    private final Workspace[] workspaces;
+    private final AtomicInteger nextFacility = new AtomicInteger();
+
+    private double lowerBound = Double.NEGATIVE_INFINITY;
+    private FacilitySolution best;
+
+    public LagrangianFacility(FacilityInstance instance, int threads) {
+        this.instance = instance;
+        nFacilities = instance.getFacilitiesSize();
+        nCustomers = instance.getCustomersSize();
+        setupCost = instance.getSetupCost();
+        capacity = instance.getCapacity();
+        demand = instance.getDemand();
+        this.threads = Math.max(1, threads);
+
+        lambda = new double[nCustomers];
+        value = new double[nFacilities];
+        workspaces = new Workspace[this.threads];
+        for (int t = 0; t < this.threads; t++) {
+            workspaces[t] = new Workspace();
+        }
+    }
+
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Best feasible solution found by the repair heuristic
+     */
+    public FacilitySolution getBest() {
+        return best;
+    }
+
+    public boolean isOptimal() {
+        return best != null && best.getCost() - lowerBound <= GAP_TOLERANCE * best.getCost();
+    }
+
+    /**
+     * Run the subgradient iterations until the gap is closed, the step vanishes or the time limit expires.
+     * The bound and gap trace is printed on stderr.
+     */
+    public FacilitySolution solve(long timeLimitMillis) {
+        long start = System.currentTimeMillis();
+        long deadline = start + timeLimitMillis;
+
+        // Start from the distance to the nearest facility
+        double[] costs = new double[nFacilities];
+        for (int w = 0; w < nCustomers; w++) {
+            instance.assignmentCosts(w, costs);
+            lambda[w] = Double.POSITIVE_INFINITY;
+            for (int p = 0; p < nFacilities; p++) {
+                lambda[w] = Math.min(lambda[w], costs[p]);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        double[] subgradient = new double[nCustomers];
+        double[] bestLambda = lambda.clone();
+        double stepFactor = 2;
+        int stall = 0;
+        int iteration = 0;
+        long lastLog = System.currentTimeMillis();
+        try {
+            for (; iteration < MAX_ITERATIONS && System.currentTimeMillis() < deadline; iteration++) {
+                double bound = relax(pool, subgradient);
+                if (bound > lowerBound + GAP_TOLERANCE * Math.abs(bound)) {
+                    lowerBound = bound;
+                    System.arraycopy(lambda, 0, bestLambda, 0, nCustomers);
+                    stall = 0;
+                } else if (++stall >= STALL_ITERATIONS) {
+                    // Smaller steps, from the multipliers of the best bound
+                    stepFactor /= 2;
+                    System.arraycopy(bestLambda, 0, lambda, 0, nCustomers);
+                    stall = 0;
+                    continue;
+                }
+
+                if (iteration % REPAIR_PERIOD == 0 || best == null) {
+                    FacilitySolution repaired = repair();
+                    if (repaired != null && (best == null || repaired.getCost() < best.getCost()))
+                        best = repaired;
+                    if (best == null)
+                        throw new IllegalStateException("No facility has room for some customer");
+                }
+                if (System.currentTimeMillis() - lastLog >= 1000) {
+                    log(iteration, start);
+                    lastLog = System.currentTimeMillis();
+                }
+                if (isOptimal() || stepFactor < MIN_STEP_FACTOR)
+                    break;
+
+                // Polyak step towards the best known solution value
+                double norm = 0;
+                for (int w = 0; w < nCustomers; w++) {
+                    norm += subgradient[w] * subgradient[w];
+                }
+                if (norm == 0)
+                    break;
+                double step = stepFactor * (best.getCost() - bound) / norm;
+                for (int w = 0; w < nCustomers; w++) {
+                    lambda[w] += step * subgradient[w];
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (best != null)
+            log(iteration, start);
+        return best;
+    }
+
+    private void log(int iteration, long start) {
+        System.err.printf("lagrangian: iteration %d bound %.2f best %.2f gap %.3f%% (%d ms)%n", iteration, lowerBound,
+                best.getCost(), 100 * (best.getCost() - lowerBound) / best.getCost(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Solve the facility subproblems for the current multipliers. Returns the Lagrangian bound and fills the
+     * subgradient 1 - sum over p of y[w][p].
+     */
+    private double relax(ForkJoinPool pool, double[] subgradient) {
+        nextFacility.set(0);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Workspace workspace : workspaces) {
+            tasks.add(() -> {
+                workspace.run();
+                return null;
+            });
+        }
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        double bound = 0;
+        for (int w = 0; w < nCustomers; w++) {
+            bound += lambda[w];
+            subgradient[w] = 1;
+        }
+        for (int p = 0; p < nFacilities; p++) {
+            bound += Math.min(0, value[p]);
+        }
+        for (Workspace workspace : workspaces) {
+            for (int w = 0; w < nCustomers; w++) {
+                subgradient[w] -= workspace.coverage[w];
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Keep the facilities opened by the relaxation, then assign the customers by decreasing demand to the nearest
+     * open facility with room, opening the cheapest closed facility when none has room
+     */
+    private FacilitySolution repair() {
+        boolean[] open = new boolean[nFacilities];
+        int[] openList = new int[nFacilities];
+        int openSize = 0;
+        double openCapacity = 0;
+        double totalDemand = 0;
+        for (int w = 0; w < nCustomers; w++) {
+            totalDemand += demand[w];
+        }
+        for (int p = 0; p < nFacilities; p++) {
+            if (value[p] < 0) {
+                open[p] = true;
+                openList[openSize++] = p;
+                openCapacity += capacity[p];
+            }
+        }
+        // Not enough room: also open the closed facilities with the smallest Lagrangian values
+        if (openCapacity < totalDemand) {
+            long[] closed = new long[nFacilities - openSize];
+            int closedSize = 0;
+            for (int p = 0; p < nFacilities; p++) {
+                if (!open[p])
+                    closed[closedSize++] = ((long) Float.floatToIntBits((float) value[p]) << 32) | p;
+            }
+            Arrays.sort(closed);
+            for (int i = 0; i < closedSize && openCapacity < totalDemand; i++) {
+                int p = (int) closed[i];
+                open[p] = true;
+                openList[openSize++] = p;
+                openCapacity += capacity[p];
+            }
+        }
+
+        // Customers by decreasing regret: distance to the second nearest open facility minus the nearest
+        long[] order = new long[nCustomers];
+        for (int w = 0; w < nCustomers; w++) {
+            double nearest = Double.POSITIVE_INFINITY;
+            double secondNearest = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < openSize; k++) {
+                double d = distance(w, openList[k]);
+                if (d < nearest) {
+                    secondNearest = nearest;
+                    nearest = d;
+                } else if (d < secondNearest) {
+                    secondNearest = d;
+                }
+            }
+            float regret = (float) Math.min(Float.MAX_VALUE, secondNearest - nearest);
+            order[w] = ((long) Float.floatToIntBits(regret) << 32) | w;
+        }
+        Arrays.sort(order);
+
+        double[] load = new double[nFacilities];
+        int[] assignment = new int[nCustomers];
+        for (int i = nCustomers - 1; i >= 0; i--) {
+            int w = (int) order[i];
+            int target = -1;
+            for (int k = 0; k < openSize; k++) {
+                int p = openList[k];
+                if (load[p] + demand[w] <= capacity[p] && (target < 0 || distance(w, p) < distance(w, target)))
+                    target = p;
+            }
+            if (target < 0) {
+                for (int p = 0; p < nFacilities; p++) {
+                    if (!open[p] && demand[w] <= capacity[p]
+                            && (target < 0 || setupCost[p] + distance(w, p) < setupCost[target] + distance(w, target)))
+                        target = p;
+                }
+                if (target < 0)
+                    return null;
+                open[target] = true;
+                openList[openSize++] = target;
+            }
+            assignment[w] = target;
+            load[target] += demand[w];
+        }
+        do {
+            reassign(assignment, load, openList, openSize);
+        } while (dropFacilities(assignment, load, openList, openSize));
+
+        double cost = 0;
+        for (int p = 0; p < nFacilities; p++) {
+            if (load[p] > 0)
+                cost += setupCost[p];
+        }
+        for (int w = 0; w < nCustomers; w++) {
+            cost += distance(w, assignment[w]);
+        }
+        return new FacilitySolution(assignment, cost);
+    }
+
+    // Move every customer to the nearest used facility with room
+    private void reassign(int[] assignment, double[] load, int[] openList, int openSize) {
+        for (int w = 0; w < nCustomers; w++) {
+            int p = assignment[w];
+            int target = p;
+            for (int k = 0; k < openSize; k++) {
+                int q = openList[k];
+                if (load[q] > 0 && load[q] + demand[w] <= capacity[q] && distance(w, q) < distance(w, target))
+                    target = q;
+            }
+            if (target != p) {
+                assignment[w] = target;
+                load[p] -= demand[w];
+                load[target] += demand[w];
+            }
+        }
+    }
+
+    /**
+     * Close every used facility whose customers can all move to the nearest other used facilities with room,
+     * when the distance increase is lower than its setup cost. Returns true when a facility was closed.
+     */
+    private boolean dropFacilities(int[] assignment, double[] load, int[] openList, int openSize) {
+        int[] offsets = new int[nFacilities + 1];
+        for (int w = 0; w < nCustomers; w++) {
+            offsets[assignment[w] + 1]++;
+        }
+        for (int p = 0; p < nFacilities; p++) {
+            offsets[p + 1] += offsets[p];
+        }
+        int[] customers = new int[nCustomers];
+        int[] fill = Arrays.copyOf(offsets, nFacilities);
+        for (int w = 0; w < nCustomers; w++) {
+            customers[fill[assignment[w]]++] = w;
+        }
+
+        // A facility that received customers keeps them, it cannot be closed anymore
+        boolean[] received = new boolean[nFacilities];
+        boolean dropped = false;
+        for (int k = 0; k < openSize; k++) {
+            int p = openList[k];
+            if (load[p] == 0 || received[p])
+                continue;
+            double delta = -setupCost[p];
+            int moved = offsets[p];
+            for (; moved < offsets[p + 1] && delta < 0; moved++) {
+                int w = customers[moved];
+                int target = -1;
+                for (int l = 0; l < openSize; l++) {
+                    int q = openList[l];
+                    if (q != p && load[q] > 0 && load[q] + demand[w] <= capacity[q]
+                            && (target < 0 || distance(w, q) < distance(w, target)))
+                        target = q;
+                }
+                if (target < 0) {
+                    delta = 0;
+                    break;
+                }
+                delta += distance(w, target) - distance(w, p);
+                assignment[w] = target;
+                load[target] += demand[w];
+            }
+            if (delta < 0) {
+                load[p] = 0;
+                dropped = true;
+                for (int i = offsets[p]; i < offsets[p + 1]; i++) {
+                    received[assignment[customers[i]]] = true;
+                }
+            } else {
+                // Move back the customers moved so far
+                for (int i = offsets[p]; i < moved; i++) {
+                    int w = customers[i];
+                    if (assignment[w] != p) {
+                        load[assignment[w]] -= demand[w];
+                        assignment[w] = p;
+                    }
+                }
+            }
+        }
+        return dropped;
+    }
+
+    private double distance(int w, int p) {
+        return instance.assignmentCost(w, p);
+    }
+
+    /**
+     * Per thread scratch of the knapsack subproblems and the share of the y values of the facilities it solved
+     */
+    private class Workspace {
+        private final double[] coverage = new double[nCustomers];
+        private final int[] heap = new int[nCustomers];
+        private final double[] keys = new double[nCustomers];
+        private final double[] reducedCost = new double[nCustomers];
+
+        void run() {
+            Arrays.fill(coverage, 0);
+            int p;
+            while ((p = nextFacility.getAndIncrement()) < nFacilities) {
+                knapsack(p);
+            }
+        }
+
+        // Fractional knapsack of the customers with a negative reduced cost, by decreasing saving per unit of demand
+        private void knapsack(int p) {
+            int size = 0;
+            double total = 0;
+            for (int w = 0; w < nCustomers; w++) {
+                double rc = distance(w, p) - lambda[w];
+                reducedCost[w] = rc;
+                if (rc < 0) {
+                    heap[size] = w;
+                    keys[size++] = -rc / Math.max(demand[w], Double.MIN_NORMAL);
+                    total += demand[w];
+                }
+            }
+
+            double knapsack = 0;
+            if (total <= capacity[p]) {
+                for (int i = 0; i < size; i++) {
+                    knapsack += reducedCost[heap[i]];
+                }
+                value[p] = setupCost[p] + knapsack;
+                if (value[p] < 0) {
+                    for (int i = 0; i < size; i++) {
+                        coverage[heap[i]] += 1;
+                    }
+                }
+                return;
+            }
+
+            // Heapify, then pop the best ratios until the capacity is full
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i, size, heap[i], keys[i]);
+            }
+            int chosen = 0;
+            double left = capacity[p];
+            double lastFraction = 0;
+            int[] order = heap;
+            while (size > 0 && left > 0) {
+                int w = heap[0];
+                size--;
+                siftDown(0, size, heap[size], keys[size]);
+                double fraction = Math.min(1, left / Math.max(demand[w], Double.MIN_NORMAL));
+                knapsack += fraction * reducedCost[w];
+                left -= fraction * demand[w];
+                // The popped customers are kept after the heap, from the end of the array
+                order[nCustomers - 1 - chosen++] = w;
+                lastFraction = fraction;
+            }
+            value[p] = setupCost[p] + knapsack;
+            if (value[p] < 0) {
+                for (int i = 0; i < chosen; i++) {
+                    coverage[order[nCustomers - 1 - i]] += i == chosen - 1 ? lastFraction : 1;
+                }
+            }
+        }
+
+        // Max-heap on keys, parallel to heap; put node at position i and restore the heap of the given size
+        private void siftDown(int i, int size, int node, double key) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && keys[child + 1] > keys[child])
+                    child++;
+                if (keys[child] <= key)
+                    break;
+                heap[i] = heap[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            heap[i] = node;
+            keys[i] = key;
+        }
+    }
+}
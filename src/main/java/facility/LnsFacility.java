@@ -0,0 +1,226 @@
+package facility;
+
+import gurobi.GRB;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import gurobi.GRBModel;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Large neighbourhood search with sub-MIPs for the capacitated facility location problem.
+ *
+ * A neighbourhood is a facility of the incumbent and its NEIGHBOURHOOD_SIZE - 1 nearest facilities, open or closed,
+ * with the customers they serve. Every other decision is fixed: the freed customers can only be served by the freed
+ * facilities, whose whole capacity is theirs. This sub-problem is a facility location instance of its own, solved by
+ * the MIP of SolverFacilityLocation from the restricted incumbent with a short time limit, and replaces the
+ * incumbent on the neighbourhood when it is cheaper.
+ *
+ * Workers solve neighbourhoods concurrently, each one with its own Gurobi environment and a single thread. A worker
+ * copies the neighbourhood from the shared incumbent, solves it unlocked and commits only when no other worker
+ * changed one of its facilities in the meantime.
+ */
+public class LnsFacility {
+
+    private static final int NEIGHBOURHOOD_SIZE = 20;
+    private static final double SUB_MIP_SECONDS = 5;
+    private static final double EPSILON = 1e-6;
+
+    private final FacilityInstance instance;
+    private final int nFacilities;
+    private final int nCustomers;
+    private final int workers;
+    private final long seed;
+    // neighbours[p]: the NEIGHBOURHOOD_SIZE nearest facilities of p, p first
+    private final int[][] neighbours;
+
+    // Incumbent, guarded by this: facility of every customer, and the version (neighbourhoods solved so far) at
+    // which every facility was last changed
+    private int[] assignment;
+    private double cost;
+    private long[] changed;
+    private long version;
+    private int improvements;
+
+    public LnsFacility(FacilityInstance instance, int workers, long seed) {
+        this.instance = instance;
+        nFacilities = instance.getFacilitiesSize();
+        nCustomers = instance.getCustomersSize();
+        this.workers = Math.max(1, workers);
+        this.seed = seed;
+        neighbours = SolverFacilityLocation.nearest(instance.getFacilityX(), instance.getFacilityY(),
+                instance.getFacilityX(), instance.getFacilityY(), NEIGHBOURHOOD_SIZE);
+    }
+
+    /**
+     * Improve the initial solution until the time limit expires
+     */
+    public FacilitySolution solve(FacilitySolution initial, long timeLimitMillis) {
+        long deadline = System.currentTimeMillis() + timeLimitMillis;
+        assignment = initial.getAssignment().clone();
+        cost = initial.getCost();
+        changed = new long[nFacilities];
+        version = 0;
+        improvements = 0;
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            for (int t = 0; t < workers; t++) {
+                long workerSeed = seed + t;
+                pool.execute(() -> new Worker(workerSeed).run(deadline));
+            }
+            pool.shutdown();
+            pool.awaitTermination(Math.max(1, deadline - System.currentTimeMillis() + 1000), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        synchronized (this) {
+            System.err.println("facility lns: " + version + " neighbourhoods, " + improvements + " improvements, cost "
+                    + cost);
+            return new FacilitySolution(assignment.clone(), cost);
+        }
+    }
+
+    private class Worker {
+        private final Random random;
+        private final boolean[] freed = new boolean[nFacilities];
+
+        private Worker(long seed) {
+            random = new Random(seed);
+        }
+
+        private void run(long deadline) {
+            GRBEnv env = null;
+            try {
+                env = new GRBEnv();
+                env.set(GRB.IntParam.OutputFlag, 0);
+                env.set(GRB.IntParam.Threads, 1);
+                while (System.currentTimeMillis() < deadline) {
+                    search(env, deadline);
+                }
+            } catch (GRBException e) {
+                System.err.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+            } finally {
+                if (env != null) {
+                    try {
+                        env.dispose();
+                    } catch (GRBException ignored) {
+                    }
+                }
+            }
+        }
+
+        private void search(GRBEnv env, long deadline) throws GRBException {
+            int[] facilities;
+            int[] customers;
+            int[] current;
+            long snapshot;
+            double before;
+            synchronized (LnsFacility.this) {
+                // A random customer picks the centre among the open facilities, the busiest ones more often
+                facilities = neighbours[assignment[random.nextInt(nCustomers)]];
+                snapshot = version;
+                for (int p : facilities) {
+                    freed[p] = true;
+                }
+                int size = 0;
+                int[] selected = new int[nCustomers];
+                for (int w = 0; w < nCustomers; w++) {
+                    if (freed[assignment[w]])
+                        selected[size++] = w;
+                }
+                customers = Arrays.copyOf(selected, size);
+                current = new int[size];
+                for (int i = 0; i < size; i++) {
+                    current[i] = assignment[customers[i]];
+                }
+                before = cost(customers, current);
+                for (int p : facilities) {
+                    freed[p] = false;
+                }
+            }
+
+            double seconds = Math.min(SUB_MIP_SECONDS, (deadline - System.currentTimeMillis()) / 1000.0);
+            if (seconds <= 0 || customers.length == 0)
+                return;
+            int[] improved = solveSubproblem(env, facilities, customers, current, seconds);
+
+            synchronized (LnsFacility.this) {
+                version++;
+                if (improved == null)
+                    return;
+                for (int p : facilities) {
+                    if (changed[p] > snapshot)
+                        return;
+                }
+                double after = cost(customers, improved);
+                if (after >= before - EPSILON)
+                    return;
+                for (int i = 0; i < customers.length; i++) {
+                    assignment[customers[i]] = improved[i];
+                }
+                for (int p : facilities) {
+                    changed[p] = version;
+                }
+                cost += after - before;
+                improvements++;
+                System.err.println("facility lns: " + before + " -> " + after + " around facility " + facilities[0]
+                        + ", cost " + cost);
+            }
+        }
+
+        // Facility of every freed customer in the sub-MIP solution (null when it has none), the sub-MIP starting
+        // from their current facilities
+        private int[] solveSubproblem(GRBEnv env, int[] facilities, int[] customers, int[] current, double seconds)
+                throws GRBException {
+            FacilityInstance sub = instance.restrict(facilities, customers);
+            int[] local = new int[nFacilities];
+            for (int i = 0; i < facilities.length; i++) {
+                local[facilities[i]] = i;
+            }
+            int[] start = new int[customers.length];
+            for (int i = 0; i < customers.length; i++) {
+                start[i] = local[current[i]];
+            }
+
+            SolverFacilityLocation solver = new SolverFacilityLocation(sub);
+            solver.setStart(new FacilitySolution(start, 0));
+            FacilityModel facilityModel = solver.buildModel(env, solver.getCandidates(facilities.length));
+            GRBModel model = facilityModel.getModel();
+            try {
+                model.getEnv().set(GRB.DoubleParam.TimeLimit, seconds);
+                model.optimize();
+                if (model.get(GRB.IntAttr.SolCount) == 0)
+                    return null;
+                int[] improved = solver.readAssignment(model, facilityModel.getY(), facilityModel.getCandidates());
+                for (int i = 0; i < improved.length; i++) {
+                    improved[i] = facilities[improved[i]];
+                }
+                return improved;
+            } finally {
+                model.dispose();
+            }
+        }
+    }
+
+    // Setup costs of the facilities serving the customers, plus their assignment costs, customers[i] being served
+    // by facilityOf[i]
+    private double cost(int[] customers, int[] facilityOf) {
+        boolean[] open = new boolean[nFacilities];
+        double total = 0;
+        for (int i = 0; i < customers.length; i++) {
+            int p = facilityOf[i];
+            total += instance.assignmentCost(customers[i], p);
+            if (!open[p]) {
+                open[p] = true;
+                total += instance.getSetupCost()[p];
+            }
+        }
+        return total;
+    }
+}
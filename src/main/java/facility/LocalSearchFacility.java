@@ -0,0 +1,454 @@
+package facility;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Local search for the capacitated facility location problem, without any MIP solver.
+ *
+ * Moves: reassign a customer, exchange the facilities of two customers, close a facility (its customers go to the
+ * nearest open facilities with room), open a facility (the customers nearer to it move in) and swap an open facility
+ * for a closed one. A facility is open when it serves a customer. The state keeps the load of every facility, the
+ * customers of every facility in linked lists and, for every customer, the nearest and second nearest open facility
+ * among its candidates, so reassign and exchange deltas are O(1) and the facility moves only touch the customers
+ * involved. Compound moves are applied, evaluated and undone when rejected. Moves are accepted by late acceptance
+ * hill climbing: a move is taken when it does not worsen the current cost or the cost of HISTORY_SIZE iterations ago.
+ */
+public class LocalSearchFacility {
+
+    private static final int CANDIDATES_SIZE = 20;
+    private static final int HISTORY_SIZE = 2000;
+    private static final double EPSILON = 1e-9;
+
+    private final FacilityInstance instance;
+    private final int nFacilities;
+    private final int nCustomers;
+    private final double[] setupCost;
+    private final double[] capacity;
+    private final double[] demand;
+    private final Random random;
+
+    // candidates[w]: nearest facilities of customer w; near[p]: customers having p as a candidate (CSR)
+    private final int[][] candidates;
+    private final int[] nearOffsets;
+    private final int[] near;
+
+    private final int[] assignment;
+    private final double[] load;
+    private final int[] served;
+    // Customers of every facility, in doubly linked lists
+    private final int[] head;
+    private final int[] next;
+    private final int[] previous;
+    // Open facilities, with their position in the array
+    private final int[] open;
+    private final int[] openPosition;
+    private int openSize;
+    // Nearest and second nearest open candidate of every customer, -1 when there is none
+    private final int[] best;
+    private final int[] second;
+    private double cost;
+
+    // Moves of the current compound move: customer and facility it came from
+    private final int[] undoCustomer;
+    private final int[] undoFacility;
+    private int undoSize;
+    private final int[] buffer;
+
+    private long iterations;
+
+    public LocalSearchFacility(FacilityInstance instance, long seed) {
+        this.instance = instance;
+        nFacilities = instance.getFacilitiesSize();
+        nCustomers = instance.getCustomersSize();
+        setupCost = instance.getSetupCost();
+        capacity = instance.getCapacity();
+        demand = instance.getDemand();
+        random = new Random(seed);
+
+        candidates = SolverFacilityLocation.nearest(instance.getCustomerX(), instance.getCustomerY(),
+                instance.getFacilityX(), instance.getFacilityY(), CANDIDATES_SIZE);
+        nearOffsets = new int[nFacilities + 1];
+        near = SolverFacilityLocation.nearCustomers(candidates, nearOffsets);
+
+        assignment = new int[nCustomers];
+        load = new double[nFacilities];
+        served = new int[nFacilities];
+        head = new int[nFacilities];
+        next = new int[nCustomers];
+        previous = new int[nCustomers];
+        open = new int[nFacilities];
+        openPosition = new int[nFacilities];
+        best = new int[nCustomers];
+        second = new int[nCustomers];
+        undoCustomer = new int[2 * nCustomers];
+        undoFacility = new int[2 * nCustomers];
+        buffer = new int[nCustomers];
+    }
+
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Greedy construction followed by the local search until the time limit. Returns the best solution found.
+     */
+    public FacilitySolution solve(long timeLimitMillis) {
+        return solve(null, timeLimitMillis);
+    }
+
+    /**
+     * Local search from the given feasible assignment (the greedy construction when null) until the time limit
+     */
+    public FacilitySolution solve(int[] initial, long timeLimitMillis) {
+        long deadline = System.currentTimeMillis() + timeLimitMillis;
+        if (initial == null) {
+            construct();
+        } else {
+            start(initial);
+        }
+        double bestCost = cost;
+        int[] bestAssignment = assignment.clone();
+        System.err.println("local search: initial cost " + bestCost);
+
+        double[] history = new double[HISTORY_SIZE];
+        Arrays.fill(history, cost);
+        long lastLog = System.currentTimeMillis();
+        for (iterations = 0; ; iterations++) {
+            if ((iterations & 1023) == 0 && System.currentTimeMillis() >= deadline)
+                break;
+
+            int move = random.nextInt(100);
+            double limit = Math.max(cost, history[(int) (iterations % HISTORY_SIZE)]);
+            if (move < 50) {
+                reassign(limit);
+            } else if (move < 75) {
+                exchange(limit);
+            } else if (move < 85) {
+                close(limit);
+            } else if (move < 95) {
+                open(limit);
+            } else {
+                swap(limit);
+            }
+            history[(int) (iterations % HISTORY_SIZE)] = cost;
+
+            if (cost < bestCost - EPSILON) {
+                // Recompute the cost from scratch, the incremental one drifts with the floating point errors
+                cost = totalCost();
+                if (cost < bestCost - EPSILON) {
+                    bestCost = cost;
+                    System.arraycopy(assignment, 0, bestAssignment, 0, nCustomers);
+                    if (System.currentTimeMillis() - lastLog >= 1000) {
+                        System.err.println("local search: " + bestCost + " after " + iterations + " iterations");
+                        lastLog = System.currentTimeMillis();
+                    }
+                }
+            }
+        }
+        System.err.println("local search: " + bestCost + " after " + iterations + " iterations");
+        return new FacilitySolution(bestAssignment, bestCost);
+    }
+
+    /**
+     * Customers by decreasing demand, each one to the candidate with room minimizing distance plus setup cost
+     */
+    private void construct() {
+        reset();
+        long[] order = new long[nCustomers];
+        for (int w = 0; w < nCustomers; w++) {
+            order[w] = ((long) Float.floatToIntBits((float) demand[w]) << 32) | w;
+        }
+        Arrays.sort(order);
+
+        for (int i = nCustomers - 1; i >= 0; i--) {
+            int w = (int) order[i];
+            int target = cheapest(w, candidates[w]);
+            if (target < 0) {
+                for (int p = 0; p < nFacilities; p++) {
+                    if (fits(w, p) && (target < 0 || openingCost(w, p) < openingCost(w, target)))
+                        target = p;
+                }
+            }
+            if (target < 0)
+                throw new IllegalStateException("No facility has room for customer " + w);
+            add(w, target);
+        }
+        cost = totalCost();
+        undoSize = 0;
+    }
+
+    private void start(int[] initial) {
+        reset();
+        for (int w = 0; w < nCustomers; w++) {
+            add(w, initial[w]);
+        }
+        cost = totalCost();
+        undoSize = 0;
+    }
+
+    // Every facility empty and closed, so that solve can be called again on the same instance
+    private void reset() {
+        Arrays.fill(head, -1);
+        Arrays.fill(best, -1);
+        Arrays.fill(second, -1);
+        Arrays.fill(assignment, -1);
+        Arrays.fill(load, 0);
+        Arrays.fill(served, 0);
+        openSize = 0;
+        cost = 0;
+    }
+
+    private int cheapest(int w, int[] facilities) {
+        int target = -1;
+        for (int p : facilities) {
+            if (fits(w, p) && (target < 0 || openingCost(w, p) < openingCost(w, target)))
+                target = p;
+        }
+        return target;
+    }
+
+    private double openingCost(int w, int p) {
+        return distance(w, p) + (served[p] == 0 ? setupCost[p] : 0);
+    }
+
+    private void reassign(double limit) {
+        int w = random.nextInt(nCustomers);
+        int p = assignment[w];
+        int q = candidates[w][random.nextInt(candidates[w].length)];
+        if (q == p || !fits(w, q))
+            return;
+        double delta = distance(w, q) - distance(w, p)
+                + (served[p] == 1 ? -setupCost[p] : 0) + (served[q] == 0 ? setupCost[q] : 0);
+        if (cost + delta <= limit) {
+            move(w, q);
+            undoSize = 0;
+        }
+    }
+
+    private void exchange(double limit) {
+        int first = random.nextInt(nCustomers);
+        int p = assignment[first];
+        if (nearOffsets[p + 1] == nearOffsets[p])
+            return;
+        int other = near[nearOffsets[p] + random.nextInt(nearOffsets[p + 1] - nearOffsets[p])];
+        int q = assignment[other];
+        if (q == p || load[p] - demand[first] + demand[other] > capacity[p]
+                || load[q] - demand[other] + demand[first] > capacity[q])
+            return;
+        double delta = distance(first, q) + distance(other, p) - distance(first, p) - distance(other, q);
+        if (cost + delta <= limit) {
+            move(first, q);
+            move(other, p);
+            undoSize = 0;
+        }
+    }
+
+    private void close(double limit) {
+        if (openSize < 2)
+            return;
+        int p = open[random.nextInt(openSize)];
+        double before = cost;
+        if (!empty(p)) {
+            undo();
+            cost = before;
+            return;
+        }
+        settle(before, limit);
+    }
+
+    private void open(double limit) {
+        int q = random.nextInt(nFacilities);
+        if (served[q] > 0)
+            return;
+        double before = cost;
+        fill(q);
+        if (served[q] == 0) {
+            undo();
+            cost = before;
+            return;
+        }
+        settle(before, limit);
+    }
+
+    // Open a closed candidate of a customer of p, then close p
+    private void swap(double limit) {
+        if (openSize < 1)
+            return;
+        int p = open[random.nextInt(openSize)];
+        int[] list = candidates[head[p]];
+        int q = list[random.nextInt(list.length)];
+        if (served[q] > 0)
+            return;
+        double before = cost;
+        fill(q);
+        if (served[p] > 0 && (openSize < 2 || !empty(p))) {
+            undo();
+            cost = before;
+            return;
+        }
+        settle(before, limit);
+    }
+
+    private void settle(double before, double limit) {
+        if (cost > limit + EPSILON) {
+            undo();
+            cost = before;
+        } else {
+            undoSize = 0;
+        }
+    }
+
+    // Move the customers of p to the nearest other open facilities with room. False when one cannot move.
+    private boolean empty(int p) {
+        int size = 0;
+        for (int w = head[p]; w >= 0; w = next[w]) {
+            buffer[size++] = w;
+        }
+        for (int i = 0; i < size; i++) {
+            int w = buffer[i];
+            int target = -1;
+            if (best[w] >= 0 && best[w] != p && fits(w, best[w])) {
+                target = best[w];
+            } else if (second[w] >= 0 && second[w] != p && fits(w, second[w])) {
+                target = second[w];
+            } else {
+                for (int q : candidates[w]) {
+                    if (q != p && served[q] > 0 && fits(w, q) && (target < 0 || distance(w, q) < distance(w, target)))
+                        target = q;
+                }
+                if (target < 0) {
+                    for (int k = 0; k < openSize; k++) {
+                        int q = open[k];
+                        if (q != p && fits(w, q) && (target < 0 || distance(w, q) < distance(w, target)))
+                            target = q;
+                    }
+                }
+            }
+            if (target < 0)
+                return false;
+            move(w, target);
+        }
+        return true;
+    }
+
+    // Move to q the customers having q as a candidate that are nearer to q than to their facility
+    private void fill(int q) {
+        for (int i = nearOffsets[q]; i < nearOffsets[q + 1]; i++) {
+            int w = near[i];
+            if (distance(w, q) < distance(w, assignment[w]) && fits(w, q))
+                move(w, q);
+        }
+    }
+
+    private void undo() {
+        while (undoSize > 0) {
+            undoSize--;
+            relocate(undoCustomer[undoSize], undoFacility[undoSize]);
+        }
+    }
+
+    private boolean fits(int w, int p) {
+        return load[p] + demand[w] <= capacity[p];
+    }
+
+    private double distance(int w, int p) {
+        return instance.assignmentCost(w, p);
+    }
+
+    private void move(int w, int q) {
+        undoCustomer[undoSize] = w;
+        undoFacility[undoSize++] = assignment[w];
+        relocate(w, q);
+    }
+
+    private void relocate(int w, int q) {
+        int p = assignment[w];
+        cost += distance(w, q) - distance(w, p);
+        remove(w, p);
+        add(w, q);
+    }
+
+    private void remove(int w, int p) {
+        if (previous[w] >= 0) {
+            next[previous[w]] = next[w];
+        } else {
+            head[p] = next[w];
+        }
+        if (next[w] >= 0)
+            previous[next[w]] = previous[w];
+        load[p] -= demand[w];
+        if (--served[p] == 0) {
+            cost -= setupCost[p];
+            closed(p);
+        }
+    }
+
+    private void add(int w, int q) {
+        assignment[w] = q;
+        previous[w] = -1;
+        next[w] = head[q];
+        if (head[q] >= 0)
+            previous[head[q]] = w;
+        head[q] = w;
+        load[q] += demand[w];
+        if (served[q]++ == 0) {
+            cost += setupCost[q];
+            opened(q);
+        }
+    }
+
+    private void opened(int q) {
+        openPosition[q] = openSize;
+        open[openSize++] = q;
+        for (int i = nearOffsets[q]; i < nearOffsets[q + 1]; i++) {
+            int w = near[i];
+            double d = distance(w, q);
+            if (best[w] < 0 || d < distance(w, best[w])) {
+                second[w] = best[w];
+                best[w] = q;
+            } else if (second[w] < 0 || d < distance(w, second[w])) {
+                second[w] = q;
+            }
+        }
+    }
+
+    private void closed(int p) {
+        int last = open[--openSize];
+        open[openPosition[p]] = last;
+        openPosition[last] = openPosition[p];
+        for (int i = nearOffsets[p]; i < nearOffsets[p + 1]; i++) {
+            int w = near[i];
+            if (best[w] == p || second[w] == p)
+                nearestOpen(w);
+        }
+    }
+
+    private void nearestOpen(int w) {
+        best[w] = -1;
+        second[w] = -1;
+        for (int q : candidates[w]) {
+            if (served[q] == 0)
+                continue;
+            double d = distance(w, q);
+            if (best[w] < 0 || d < distance(w, best[w])) {
+                second[w] = best[w];
+                best[w] = q;
+            } else if (second[w] < 0 || d < distance(w, second[w])) {
+                second[w] = q;
+            }
+        }
+    }
+
+    private double totalCost() {
+        double total = 0;
+        for (int p = 0; p < nFacilities; p++) {
+            if (served[p] > 0)
+                total += setupCost[p];
+        }
+        for (int w = 0; w < nCustomers; w++) {
+            total += distance(w, assignment[w]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,89 @@
+package facility;
+
+import gurobi.GRB;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import gurobi.GRBModel;
+import input.HandleFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compare the dense facility model (a y variable for every customer and facility) with the sparse model restricted
+ * to the k nearest facilities of each customer.
+ *
+ * Usage: java facility.ModelBenchmark [-candidates=20] [-time=60] [files...]
+ *
+ * Prints the model size, the build time, the Java heap used by the model and the solve time and objective within
+ * the time limit. The memory of the Gurobi model itself is native, the number of non zeros measures it.
+ */
+public class ModelBenchmark {
+
+    private static final String[] DEFAULT_INSTANCES = {
+            "assignament/facility/data/fl_200_1",
+            "assignament/facility/data/fl_500_7",
+            "assignament/facility/data/fl_1000_2",
+            "assignament/facility/data/fl_2000_2"
+    };
+
+    public static void main(String[] args) throws GRBException {
+        int candidatesSize = Integer.parseInt(HandleFile.getOption("candidates", "20", args));
+        double timeLimit = Double.parseDouble(HandleFile.getOption("time", "60", args));
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("-"))
+                files.add(arg);
+        }
+        if (files.isEmpty())
+            files.addAll(Arrays.asList(DEFAULT_INSTANCES));
+
+        GRBEnv env = new GRBEnv();
+        env.set(GRB.IntParam.OutputFlag, 0);
+        env.set(GRB.DoubleParam.TimeLimit, timeLimit);
+
+        System.out.printf("%-12s %-8s %10s %10s %11s %10s %10s %10s %14s%n", "instance", "model", "vars", "cstrs",
+                "nonzeros", "build(ms)", "heap(MB)", "solve(ms)", "objective");
+        for (String file : files) {
+            ParserFile parserFile = new ParserFile("-file=" + file).invoke();
+            SolverFacilityLocation solver = new SolverFacilityLocation(parserFile.getInstance());
+            String name = new File(file).getName();
+
+            run(name, "dense", solver, env, solver.getNFacilities());
+            run(name, "k=" + candidatesSize, solver, env, candidatesSize);
+        }
+        env.dispose();
+    }
+
+    private static void run(String name, String modelName, SolverFacilityLocation solver, GRBEnv env,
+                            int candidatesSize) throws GRBException {
+        long memory = usedMemory();
+        long start = System.nanoTime();
+        FacilityModel facilityModel = solver.buildModel(env, solver.getCandidates(candidatesSize));
+        long buildNanos = System.nanoTime() - start;
+        long heap = usedMemory() - memory;
+
+        GRBModel model = facilityModel.getModel();
+        start = System.nanoTime();
+        model.optimize();
+        long solveNanos = System.nanoTime() - start;
+        String objective = model.get(GRB.IntAttr.SolCount) > 0
+                ? String.format("%.1f", model.get(GRB.DoubleAttr.ObjVal))
+                : model.get(GRB.IntAttr.Status) == GRB.INFEASIBLE ? "infeasible" : "none";
+
+        System.out.printf("%-12s %-8s %10d %10d %11d %10.1f %10.2f %10.1f %14s%n", name, modelName,
+                model.get(GRB.IntAttr.NumVars), model.get(GRB.IntAttr.NumConstrs), model.get(GRB.IntAttr.NumNZs),
+                buildNanos / 1e6, heap / 1048576.0, solveNanos / 1e6, objective);
+        model.dispose();
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
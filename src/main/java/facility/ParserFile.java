@@ -1,10 +1,9 @@
 package facility;
 
-import input.HandleFile;
+import input.InstanceReader;
 import lombok.Data;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,45 +12,54 @@ import java.util.List;
 @Data
 class ParserFile {
     private String[] args;
-    private int nFacilities;
-    private int nCostumers;
-    private List<Facility> facilities;
-    private List<Customer> costumers;
+    private FacilityInstance instance;
 
     public ParserFile(String... args) {
         this.args = args;
     }
 
     public ParserFile invoke() {
-        List<String> lines = new ArrayList<>();
-
-        try {
-            lines = HandleFile.getLines(args);
+        try (InstanceReader reader = InstanceReader.open(args)) {
+            int nFacilities = reader.nextInt();
+            int nCostumers = reader.nextInt();
+            double[] setupCost = new double[nFacilities];
+            double[] capacity = new double[nFacilities];
+            double[] facilityX = new double[nFacilities];
+            double[] facilityY = new double[nFacilities];
+            for (int p = 0; p < nFacilities; p++) {
+                setupCost[p] = reader.nextDouble();
+                capacity[p] = reader.nextDouble();
+                facilityX[p] = reader.nextDouble();
+                facilityY[p] = reader.nextDouble();
+            }
+            double[] demand = new double[nCostumers];
+            double[] customerX = new double[nCostumers];
+            double[] customerY = new double[nCostumers];
+            for (int w = 0; w < nCostumers; w++) {
+                demand[w] = reader.nextDouble();
+                customerX[w] = reader.nextDouble();
+                customerY[w] = reader.nextDouble();
+            }
+            instance = new FacilityInstance(setupCost, capacity, facilityX, facilityY, demand, customerX, customerY);
         } catch (IOException e) {
             e.printStackTrace();
         }
-
-        String[] firstLine = lines.get(0).split("\\s+");
-        nFacilities = Integer.parseInt(firstLine[0]);
-        nCostumers = Integer.parseInt(firstLine[1]);
-        int i= 1;
-        facilities = new ArrayList<>();
-        for (; i <= nFacilities; i++) {
-            String[] line = lines.get(i).split("\\s+");
-            facilities.add(new Facility(i,
-                    Double.parseDouble(line[0]),
-                    Double.parseDouble(line[1]),
-                    new Point(Double.parseDouble(line[2]), Double.parseDouble(line[3]))
-            ));
-        }
-        costumers = new ArrayList<>();
-        for (; i <= nFacilities + nCostumers; i++) {
-            String[] line = lines.get(i).split("\\s+");
-            costumers.add(new Customer(i,
-                    Double.parseDouble(line[0]),
-                    new Point(Double.parseDouble(line[1]), Double.parseDouble(line[2]))
-            ));
-        }
         return this;
     }
+
+    public int getNFacilities() {
+        return instance.getFacilitiesSize();
+    }
+
+    public int getNCostumers() {
+        return instance.getCustomersSize();
+    }
+
+    public List<Facility> getFacilities() {
+        return instance.getFacilities();
+    }
+
+    public List<Customer> getCostumers() {
+        return instance.getCustomers();
+    }
 }
@@ -0,0 +1,247 @@
+package facility;
+
+import java.util.Arrays;
+
+/**
+ * Regret-k insertion for the capacitated facility location problem.
+ *
+ * The cost of serving customer w from facility p is their distance, plus the setup cost when p is still closed, and
+ * is infinite when p has no room left for w. At every step the unassigned customer with the largest regret, the sum
+ * of the differences between its k - 1 next cheapest facilities and its cheapest one, is assigned to its cheapest
+ * facility: the customers that would lose the most by waiting go first. Only the CANDIDATES_SIZE nearest facilities
+ * of a customer are considered, all of them when none of those has room.
+ *
+ * The unassigned customers sit in an indexed max-heap by regret, then demand. The cost of w at p only changes when p
+ * opens or when p no longer has room for w, so a regret is only evaluated again then: when p opens, every customer
+ * having p as a candidate is; as p fills up, the customers having p as a candidate are walked by decreasing demand
+ * from a pointer per facility, which only moves forward, up to the first one that still fits. Every step is then
+ * logarithmic in the customers, besides the few evaluations.
+ */
+public class RegretGreedyFacility {
+
+    private static final int CANDIDATES_SIZE = 20;
+
+    private final FacilityInstance instance;
+    private final int nFacilities;
+    private final int nCustomers;
+    private final double[] setupCost;
+    private final double[] capacity;
+    private final double[] demand;
+    private final int regretSize;
+
+    // candidates[w]: nearest facilities of customer w; near[p]: customers having p as a candidate (CSR), by
+    // decreasing demand
+    private final int[][] candidates;
+    private final int[] nearOffsets;
+    private final int[] near;
+    // full[p]: position in near of the first customer that may still fit in p, the ones before it do not
+    private final int[] full;
+
+    private final double[] load;
+    private final int[] assignment;
+    // Cheapest facility with room of every unassigned customer (-1 when no candidate has room) and its regret
+    private final int[] cheapest;
+    private final double[] regret;
+    // Scratch of the k cheapest costs of a customer, in increasing order
+    private final double[] costs;
+    // Unassigned customers, heap[0] first, and the position of every customer in heap (-1 when out of it)
+    private final int[] heap;
+    private final int[] heapPosition;
+    private int heapSize;
+
+    public RegretGreedyFacility(FacilityInstance instance, int regretSize) {
+        this.instance = instance;
+        nFacilities = instance.getFacilitiesSize();
+        nCustomers = instance.getCustomersSize();
+        setupCost = instance.getSetupCost();
+        capacity = instance.getCapacity();
+        demand = instance.getDemand();
+        this.regretSize = Math.max(2, regretSize);
+
+        candidates = SolverFacilityLocation.nearest(instance.getCustomerX(), instance.getCustomerY(),
+                instance.getFacilityX(), instance.getFacilityY(), CANDIDATES_SIZE);
+        nearOffsets = new int[nFacilities + 1];
+        near = SolverFacilityLocation.nearCustomers(candidates, nearOffsets);
+        // Decreasing demand within every list: the float bits of the demand (monotone for positive floats) above
+        // the customer, sorted by increasing key and read backwards
+        long[] keys = new long[near.length];
+        for (int p = 0; p < nFacilities; p++) {
+            int from = nearOffsets[p];
+            int to = nearOffsets[p + 1];
+            for (int i = from; i < to; i++) {
+                keys[i] = (long) Float.floatToIntBits((float) demand[near[i]]) << 32 | near[i];
+            }
+            Arrays.sort(keys, from, to);
+            for (int i = from; i < to; i++) {
+                near[i] = (int) keys[to - 1 - (i - from)];
+            }
+        }
+        full = new int[nFacilities];
+
+        load = new double[nFacilities];
+        assignment = new int[nCustomers];
+        cheapest = new int[nCustomers];
+        regret = new double[nCustomers];
+        costs = new double[this.regretSize];
+        heap = new int[nCustomers];
+        heapPosition = new int[nCustomers];
+    }
+
+    public FacilitySolution solve() {
+        Arrays.fill(load, 0);
+        Arrays.fill(assignment, -1);
+        System.arraycopy(nearOffsets, 0, full, 0, nFacilities);
+        heapSize = 0;
+        for (int w = 0; w < nCustomers; w++) {
+            evaluate(w);
+            heap[heapSize] = w;
+            heapPosition[w] = heapSize++;
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            down(i);
+        }
+
+        while (heapSize > 0) {
+            int w = heap[0];
+            remove(w);
+            int p = cheapest[w] >= 0 ? cheapest[w] : cheapestOfAll(w);
+            if (p < 0)
+                throw new IllegalStateException("No facility has room for customer " + w);
+            boolean opened = load[p] == 0;
+            assignment[w] = p;
+            load[p] += demand[w];
+            if (opened) {
+                // Opening p lowered its cost for all the customers near it
+                for (int i = nearOffsets[p]; i < nearOffsets[p + 1]; i++) {
+                    update(near[i]);
+                }
+            }
+            // The customers near p that no longer fit in it
+            double room = capacity[p] - load[p];
+            while (full[p] < nearOffsets[p + 1] && demand[near[full[p]]] > room) {
+                if (!opened)
+                    update(near[full[p]]);
+                full[p]++;
+            }
+        }
+
+        double cost = 0;
+        boolean[] open = new boolean[nFacilities];
+        for (int w = 0; w < nCustomers; w++) {
+            int p = assignment[w];
+            cost += instance.assignmentCost(w, p);
+            if (!open[p]) {
+                open[p] = true;
+                cost += setupCost[p];
+            }
+        }
+        return new FacilitySolution(assignment.clone(), cost);
+    }
+
+    private double cost(int w, int p) {
+        if (load[p] + demand[w] > capacity[p])
+            return Double.POSITIVE_INFINITY;
+        return instance.assignmentCost(w, p) + (load[p] == 0 ? setupCost[p] : 0);
+    }
+
+    // Cheapest candidate of w and regret over its k cheapest candidates. A customer with less than k candidates
+    // with room has an infinite regret: it goes first, as long as it has one.
+    private void evaluate(int w) {
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+        cheapest[w] = -1;
+        for (int p : candidates[w]) {
+            double c = cost(w, p);
+            if (c >= costs[regretSize - 1])
+                continue;
+            int i = regretSize - 1;
+            while (i > 0 && costs[i - 1] > c) {
+                costs[i] = costs[i - 1];
+                i--;
+            }
+            costs[i] = c;
+            if (i == 0)
+                cheapest[w] = p;
+        }
+        if (cheapest[w] < 0) {
+            // Only the facilities out of its candidates are left: serve it while some still have room
+            regret[w] = Double.POSITIVE_INFINITY;
+            return;
+        }
+        double sum = 0;
+        for (int i = 1; i < regretSize; i++) {
+            sum += costs[i] - costs[0];
+        }
+        regret[w] = sum;
+    }
+
+    // Evaluate an unassigned customer again and move it in the heap
+    private void update(int w) {
+        if (assignment[w] >= 0)
+            return;
+        evaluate(w);
+        up(heapPosition[w]);
+        down(heapPosition[w]);
+    }
+
+    // w goes before v: larger regret, then larger demand
+    private boolean before(int w, int v) {
+        return regret[w] > regret[v] || (regret[w] == regret[v] && demand[w] > demand[v]);
+    }
+
+    private void remove(int w) {
+        int i = heapPosition[w];
+        int last = heap[--heapSize];
+        heapPosition[w] = -1;
+        if (i < heapSize) {
+            heap[i] = last;
+            heapPosition[last] = i;
+            up(i);
+            down(heapPosition[last]);
+        }
+    }
+
+    private void up(int i) {
+        int w = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(w, heap[parent]))
+                break;
+            heap[i] = heap[parent];
+            heapPosition[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = w;
+        heapPosition[w] = i;
+    }
+
+    private void down(int i) {
+        int w = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+                child++;
+            if (!before(heap[child], w))
+                break;
+            heap[i] = heap[child];
+            heapPosition[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = w;
+        heapPosition[w] = i;
+    }
+
+    private int cheapestOfAll(int w) {
+        int target = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int p = 0; p < nFacilities; p++) {
+            double c = cost(w, p);
+            if (c < best) {
+                best = c;
+                target = p;
+            }
+        }
+        return target;
+    }
+}
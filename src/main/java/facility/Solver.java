@@ -1,21 +1,99 @@
 package facility;
 
-import java.util.List;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import input.HandleFile;
 
 /**
  * Created by Leo on 04/12/2016.
  */
 public class Solver {
 
+    private static final long SEED = 1;
+    private static final long START_IMPROVEMENT_MILLIS = 2000;
+    private static final long REPAIR_MILLIS = 5000;
+
     public static void main(String[] args) {
 
         ParserFile parserFile = new ParserFile(args).invoke();
-        int nFacilities = parserFile.getNFacilities();
-        List<Facility> facilities = parserFile.getFacilities();
-        int nCostumers = parserFile.getNCostumers();
-        List<Customer> costumers = parserFile.getCostumers();
+        FacilityInstance instance = parserFile.getInstance();
+
+        // -mode=mip (Gurobi model), lns (sub-MIPs around the regret start), benders (master on the open facilities
+        // with lazy cuts), ls (local search) or lagrangian (bound and repaired solutions), the last two need no
+        // solver license
+        String mode = HandleFile.getOption("mode", "mip", args);
+        long timeLimitMillis = (long) (1000 * Double.parseDouble(
+                HandleFile.getOption("time", String.valueOf(SolverFacilityLocation.TIME_LIMIT_SECONDS), args)));
+        if ("ls".equals(mode)) {
+            FacilitySolution solution = new LocalSearchFacility(instance, SEED).solve(timeLimitMillis);
+            System.out.println(solution.format(false));
+            return;
+        }
+        if ("lagrangian".equals(mode)) {
+            int threads = Integer.parseInt(HandleFile.getOption("threads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors()), args));
+            LagrangianFacility lagrangian = new LagrangianFacility(instance, threads);
+            FacilitySolution solution = lagrangian.solve(timeLimitMillis);
+            System.err.println("lagrangian: lower bound " + lagrangian.getLowerBound());
+            System.out.println(solution.format(lagrangian.isOptimal()));
+            return;
+        }
+
+        if ("lns".equals(mode)) {
+            // -workers: neighbourhoods solved at the same time, each by a single threaded Gurobi environment
+            int workers = Integer.parseInt(HandleFile.getOption("workers",
+                    String.valueOf(Runtime.getRuntime().availableProcessors()), args));
+            long begin = System.currentTimeMillis();
+            FacilitySolution start = new SolverFacilityLocation(instance).warmStart(START_IMPROVEMENT_MILLIS);
+            FacilitySolution solution = new LnsFacility(instance, workers, SEED).solve(start,
+                    Math.max(0, timeLimitMillis - (System.currentTimeMillis() - begin)));
+            System.out.println(solution.format(false));
+            return;
+        }
+
+        if ("benders".equals(mode)) {
+            int threads = Integer.parseInt(HandleFile.getOption("threads",
+                    String.valueOf(Runtime.getRuntime().availableProcessors()), args));
+            try {
+                long begin = System.currentTimeMillis();
+                FacilitySolution start = new SolverFacilityLocation(instance).warmStart(START_IMPROVEMENT_MILLIS);
+                GRBEnv env = new GRBEnv();
+                BendersFacility benders = new BendersFacility(instance, threads);
+                FacilitySolution solution = benders.solve(env, start,
+                        Math.max(0, timeLimitMillis - (System.currentTimeMillis() - begin)));
+                env.dispose();
+                if (benders.getNoGoodCuts() == 0)
+                    System.err.println("benders: lower bound " + benders.getLowerBound());
+                System.out.println(solution.format(false));
+            } catch (GRBException e) {
+                System.out.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+            }
+            return;
+        }
+
+        // -candidates=k only lets a customer be served by its k nearest facilities (0 for all of them)
+        int candidatesSize = Integer.parseInt(HandleFile.getOption("candidates", "0", args));
+        // -aggregate=n solves the model on about n super-customers, then assigns the customers (0 to disable)
+        int aggregateSize = Integer.parseInt(HandleFile.getOption("aggregate", "0", args));
+        if (aggregateSize > 0) {
+            try {
+                GRBEnv env = new GRBEnv();
+                FacilitySolution solution = new AggregatedFacility(instance, aggregateSize).solve(env,
+                        candidatesSize, timeLimitMillis, START_IMPROVEMENT_MILLIS, REPAIR_MILLIS);
+                env.dispose();
+                System.out.println(solution.format(false));
+            } catch (GRBException e) {
+                System.out.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+            }
+            return;
+        }
 
-        new SolverFacilityLocation(nFacilities, nCostumers, facilities, costumers).solve();
+        SolverFacilityLocation solverFacilityLocation = new SolverFacilityLocation(instance);
+        solverFacilityLocation.setCandidatesSize(candidatesSize);
+        // -start=regret (regret greedy improved by the local search) or basic (all the plants open but one)
+        if (!"basic".equals(HandleFile.getOption("start", "regret", args)))
+            solverFacilityLocation.setStart(solverFacilityLocation.warmStart(START_IMPROVEMENT_MILLIS));
+        solverFacilityLocation.solve();
     }
 
 
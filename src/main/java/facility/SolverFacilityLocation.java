@@ -3,68 +3,95 @@ package facility;
 import gurobi.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import spatial.KdTree;
+import spatial.SpatialIndex;
 
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Created by Leo on 08/12/2016.
  */
 @Data
-@AllArgsConstructor
 public class SolverFacilityLocation {
 
+    private FacilityInstance instance;
     private int nFacilities;
     private int ncustomers;
-    private List<Facility> facilities;
-    private List<Customer> customers;
 
-    private static int TIME_LIMIT_SECONDS = 200;
+    // Number of nearest facilities a customer can be assigned to (0 for all of them, the dense model)
+    private int candidatesSize = 0;
+    // MIP start on x and y (null: open all the plants but the one with the highest setup cost)
+    private FacilitySolution start;
 
-    public Double getDistance(Point i, Point j) {
-        double x1 = i.getX();
-        double y1 = i.getY();
-        double x2 = j.getX();
-        double y2 = j.getY();
-        return Math.sqrt((x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2));
+    static int TIME_LIMIT_SECONDS = 200;
+    private static final int REGRET_SIZE = 3;
+    private static final long SEED = 1;
+
+    public SolverFacilityLocation(FacilityInstance instance) {
+        this.instance = instance;
+        this.nFacilities = instance.getFacilitiesSize();
+        this.ncustomers = instance.getCustomersSize();
     }
 
+    /**
+     * Solve the MIP. In the sparse mode, a customer can only be assigned to its candidatesSize nearest facilities;
+     * the number of candidates is doubled and the model solved again while the restricted model is infeasible or
+     * some customer is assigned to its farthest candidate (a farther facility could then be cheaper).
+     */
     public void solve() {
         try {
 
-            // Create Model
+            // Create environment
             GRBEnv env = new GRBEnv();
-            GRBModel model = new GRBModel(env);
-            model.set(GRB.StringAttr.ModelName, "facility");
-
-            //Add objectiveExpression
-            Objective objective = new Objective(model).addObjective();
-            GRBVar[][] y = objective.getY();
-            GRBVar[] x = objective.getX();
-            //Add constraints
-            new Constraints(model, y, x).addConstraints();
-            //Add starting point to optimization
-            new StartingPoint(x).defineGuess();
-
-
-            //Configure solver
-            model.getEnv().set(GRB.IntParam.Method, GRB.METHOD_BARRIER);  // Use barrier to solve root relaxation
-            model.getEnv().set(GRB.IntParam.OutputFlag, 1); // Disable gurobi logs
-
-            model.getEnv().set(GRB.DoubleParam.TimeLimit, TIME_LIMIT_SECONDS);  //Define time limit optimization
+            long deadline = System.currentTimeMillis() + TIME_LIMIT_SECONDS * 1000L;
+            int k = candidatesSize <= 0 ? nFacilities : Math.min(candidatesSize, nFacilities);
+
+            while (true) {
+                // Create Model
+                long start = System.currentTimeMillis();
+                FacilityModel facilityModel = buildModel(env, getCandidates(k));
+                GRBModel model = facilityModel.getModel();
+                GRBVar[][] y = facilityModel.getY();
+                GRBVar[] x = facilityModel.getX();
+                int[][] candidates = facilityModel.getCandidates();
+                long buildMillis = System.currentTimeMillis() - start;
+
+                //Configure solver
+                model.getEnv().set(GRB.IntParam.Method, GRB.METHOD_BARRIER);  // Use barrier to solve root relaxation
+                model.getEnv().set(GRB.IntParam.OutputFlag, 1); // Disable gurobi logs
+
+                //Define time limit optimization
+                model.getEnv().set(GRB.DoubleParam.TimeLimit, Math.max(1, deadline - System.currentTimeMillis()) / 1000.0);
+
+                start = System.currentTimeMillis();
+                model.optimize();
+                System.err.println("facility model: " + k + " candidates, " + model.get(GRB.IntAttr.NumVars) + " vars, "
+                        + model.get(GRB.IntAttr.NumConstrs) + " constraints, build " + buildMillis + " ms, solve "
+                        + (System.currentTimeMillis() - start) + " ms");
+
+                boolean widen = model.get(GRB.IntAttr.Status) == GRB.INFEASIBLE
+                        || (model.get(GRB.IntAttr.SolCount) > 0 && usesFarthestCandidate(y, candidates));
+                if (widen && k < nFacilities && System.currentTimeMillis() < deadline) {
+                    model.dispose();
+                    k = Math.min(2 * k, nFacilities);
+                    continue;
+                }
 
-            model.optimize();
+                model.write("Facility.lp"); //Used to print model in a file
+                //model.computeIIS(); //Used to debug solution infeasible
+                //model.write("Facility.ilp"); //Used to IIS in a file
 
-            model.write("Facility.lp"); //Used to print model in a file
-            //model.computeIIS(); //Used to debug solution infeasible
-            //model.write("Facility.ilp"); //Used to IIS in a file
+                // Print solution
+                printSolution(model, y, x, candidates);
 
-            // Print solution
-            printSolution(model, y, x);
+                //debugSolution(model, y, x, candidates);
 
-            //debugSolution(model, y, x);
+                // Dispose of model
+                model.dispose();
+                break;
+            }
 
-            // Dispose of model and environment
-            model.dispose();
+            // Dispose of environment
             env.dispose();
 
         } catch (GRBException e) {
@@ -73,32 +100,141 @@ public class SolverFacilityLocation {
         }
     }
 
-    private void debugSolution(GRBModel model, GRBVar[][] y, GRBVar[] x) throws GRBException {
+    /**
+     * Regret-3 insertion improved by the local search for the given time, to be used as MIP start
+     */
+    FacilitySolution warmStart(long improvementMillis) {
+        long begin = System.currentTimeMillis();
+        FacilitySolution greedy = new RegretGreedyFacility(instance, REGRET_SIZE).solve();
+        FacilitySolution improved = new LocalSearchFacility(instance, SEED).solve(greedy.getAssignment(),
+                improvementMillis);
+        System.err.println("facility start: regret " + greedy.getCost() + ", improved " + improved.getCost() + " in "
+                + (System.currentTimeMillis() - begin) + " ms");
+        return improved;
+    }
+
+    /**
+     * Build the MIP where customer w can only be assigned to the facilities candidates[w], with the starting point
+     */
+    FacilityModel buildModel(GRBEnv env, int[][] candidates) throws GRBException {
+        GRBModel model = new GRBModel(env);
+        model.set(GRB.StringAttr.ModelName, "facility");
+
+        //Add objectiveExpression
+        Objective objective = new Objective(model, candidates).addObjective();
+        GRBVar[][] y = objective.getY();
+        GRBVar[] x = objective.getX();
+        //Add constraints
+        new Constraints(model, y, x, candidates).addConstraints();
+        //Add starting point to optimization
+        new StartingPoint(model, x, y, candidates).defineGuess();
+        model.update();
+
+        return new FacilityModel(model, x, y, candidates);
+    }
+
+    /**
+     * candidates[w]: the k nearest facilities of customer w, by increasing distance. With k = nFacilities every
+     * customer shares the same array of all the facilities.
+     */
+    int[][] getCandidates(int k) {
+        int[][] candidates = new int[ncustomers][];
+        if (k >= nFacilities) {
+            int[] all = new int[nFacilities];
+            for (int p = 0; p < nFacilities; p++) {
+                all[p] = p;
+            }
+            Arrays.fill(candidates, all);
+            return candidates;
+        }
+        return nearest(instance.getCustomerX(), instance.getCustomerY(), instance.getFacilityX(),
+                instance.getFacilityY(), k);
+    }
+
+    /**
+     * For every point (x, y), the k nearest of the points (toX, toY), by increasing distance
+     */
+    static int[][] nearest(double[] x, double[] y, double[] toX, double[] toY, int k) {
+        k = Math.min(k, toX.length);
+        SpatialIndex index = new KdTree(toX, toY);
+        int[][] candidates = new int[x.length][];
+        for (int w = 0; w < x.length; w++) {
+            candidates[w] = new int[k];
+            index.nearest(x[w], y[w], k, candidates[w]);
+        }
+        return candidates;
+    }
+
+    /**
+     * Customers having p as a candidate, in CSR form: near[offsets[p]] to near[offsets[p + 1] - 1], by increasing
+     * index. Fills offsets, of nFacilities + 1 slots, and returns near.
+     */
+    static int[] nearCustomers(int[][] candidates, int[] offsets) {
+        int nFacilities = offsets.length - 1;
+        Arrays.fill(offsets, 0);
+        for (int[] list : candidates) {
+            for (int p : list) {
+                offsets[p + 1]++;
+            }
+        }
+        for (int p = 0; p < nFacilities; p++) {
+            offsets[p + 1] += offsets[p];
+        }
+        int[] near = new int[offsets[nFacilities]];
+        int[] fill = Arrays.copyOf(offsets, nFacilities);
+        for (int w = 0; w < candidates.length; w++) {
+            for (int p : candidates[w]) {
+                near[fill[p]++] = w;
+            }
+        }
+        return near;
+    }
+
+    private boolean usesFarthestCandidate(GRBVar[][] y, int[][] candidates) throws GRBException {
+        for (int w = 0; w < ncustomers; ++w) {
+            if (candidates[w].length < nFacilities && y[w][candidates[w].length - 1].get(GRB.DoubleAttr.X) > 0.5)
+                return true;
+        }
+        return false;
+    }
+
+    private void debugSolution(GRBModel model, GRBVar[][] y, GRBVar[] x, int[][] candidates) throws GRBException {
         System.out.println(model.get(GRB.DoubleAttr.ObjVal) + " " + 1);
         for (int p = 0; p < nFacilities; ++p) {
             if (x[p].get(GRB.DoubleAttr.X) == 1.0) {
                 System.out.println("Plant " + p + " open:");
                 for (int w = 0; w < ncustomers; ++w) {
-                    if(y[w][p].get(GRB.DoubleAttr.X) > 0.0001) {
-                        System.out.println("  Transport " +
-                                y[w][p].get(GRB.DoubleAttr.X)*facilities.get(p).getCapacity() +
-                                " units to warehouse " + w + " d:"  +  getDistance(customers.get(w).getPosition(), facilities.get(p).getPosition()) + " y: " + y[w][p].get(GRB.DoubleAttr.X));
+                    for (int j = 0; j < candidates[w].length; ++j) {
+                        if (candidates[w][j] == p && y[w][j].get(GRB.DoubleAttr.X) > 0.0001) {
+                            System.out.println("  Transport " +
+                                    y[w][j].get(GRB.DoubleAttr.X)*instance.getCapacity()[p] +
+                                    " units to warehouse " + w + " d:"  +  instance.assignmentCost(w, p) + " y: " + y[w][j].get(GRB.DoubleAttr.X));
+                        }
                     }
                 }
             }
         }
     }
 
-    private void printSolution(GRBModel model, GRBVar[][] y, GRBVar[] x) throws GRBException {
-        System.out.println(model.get(GRB.DoubleAttr.ObjVal) + " " + 1);
-        int k = 1;
+    private void printSolution(GRBModel model, GRBVar[][] y, GRBVar[] x, int[][] candidates) throws GRBException {
+        FacilitySolution solution = new FacilitySolution(readAssignment(model, y, candidates),
+                model.get(GRB.DoubleAttr.ObjVal));
+        System.out.println(solution.format(model.get(GRB.IntAttr.Status) == GRB.OPTIMAL));
+    }
+
+    /**
+     * Facility of every customer in the incumbent of the solved model
+     */
+    int[] readAssignment(GRBModel model, GRBVar[][] y, int[][] candidates) throws GRBException {
+        double[][] values = model.get(GRB.DoubleAttr.X, y);
+        int[] assignment = new int[ncustomers];
         for (int w = 0; w < ncustomers; ++w) {
-            for (int p = 0; p < nFacilities; ++p) {
-                if (x[p].get(GRB.DoubleAttr.X) == 1.0 && y[w][p].get(GRB.DoubleAttr.X) > 0.0001) {
-                    System.out.print(p + " ");
-                }
+            for (int j = 0; j < candidates[w].length; ++j) {
+                if (values[w][j] > 0.5)
+                    assignment[w] = candidates[w][j];
             }
         }
+        return assignment;
     }
 
     @Data
@@ -106,9 +242,11 @@ public class SolverFacilityLocation {
         private GRBModel model;
         private GRBVar[] x;
         private GRBVar[][] y;
+        private int[][] candidates;
 
-        public Objective(GRBModel model) {
+        public Objective(GRBModel model, int[][] candidates) {
             this.model = model;
+            this.candidates = candidates;
         }
 
         public Objective addObjective() throws GRBException {
@@ -116,16 +254,18 @@ public class SolverFacilityLocation {
             // Plant open decision variables: open[p] == 1 if plant p is open.
             x = new GRBVar[nFacilities];
             for (int p = 0; p < nFacilities; ++p) {
-                x[p] = model.addVar(0, 1, facilities.get(p).getSetupCost(), GRB.BINARY, "x[" + p + "]");
+                x[p] = model.addVar(0, 1, instance.getSetupCost()[p], GRB.BINARY, "x[" + p + "]");
             }
 
 
-            // Transportation decision variables: y[w][p] = if product is transported from plant p to customer w
-            y = new GRBVar[ncustomers][nFacilities];
+            // Transportation decision variables: y[w][j] = if product is transported from plant candidates[w][j] to customer w
+            y = new GRBVar[ncustomers][];
             for (int w = 0; w < ncustomers; ++w) {
-                for (int p = 0; p < nFacilities; ++p) {
-                    y[w][p] =
-                            model.addVar(0,1, getDistance(customers.get(w).getPosition(), facilities.get(p).getPosition()), GRB.BINARY,
+                y[w] = new GRBVar[candidates[w].length];
+                for (int j = 0; j < candidates[w].length; ++j) {
+                    int p = candidates[w][j];
+                    y[w][j] =
+                            model.addVar(0,1, instance.assignmentCost(w, p), GRB.BINARY,
                                     "y[" + w + "][" + p + "]");
                 }
 
@@ -147,32 +287,39 @@ public class SolverFacilityLocation {
         private GRBModel model;
         private GRBVar[][] y;
         private GRBVar[] x;
+        private int[][] candidates;
 
 
         public void addConstraints() throws GRBException {
             // Demand constraints
             for (int w = 0; w < ncustomers; ++w) {
-                for (int p = 0; p < nFacilities; ++p) {
-                    model.addConstr(y[w][p], GRB.LESS_EQUAL, x[p], "y(" + w + "," + p + ") <= " + "x(" + p + ")");
+                for (int j = 0; j < candidates[w].length; ++j) {
+                    int p = candidates[w][j];
+                    model.addConstr(y[w][j], GRB.LESS_EQUAL, x[p], "y(" + w + "," + p + ") <= " + "x(" + p + ")");
                 }
             }
 
             // Capacity vs Demand  constraints
+            GRBLinExpr[] ptot = new GRBLinExpr[nFacilities];
             for (int p = 0; p < nFacilities; ++p) {
-                GRBLinExpr ptot = new GRBLinExpr();
-                for (int w = 0; w < ncustomers; ++w) {
-                    ptot.addTerm(customers.get(w).getDemand(), y[w][p]);
+                ptot[p] = new GRBLinExpr();
+            }
+            for (int w = 0; w < ncustomers; ++w) {
+                for (int j = 0; j < candidates[w].length; ++j) {
+                    ptot[candidates[w][j]].addTerm(instance.getDemand()[w], y[w][j]);
                 }
+            }
+            for (int p = 0; p < nFacilities; ++p) {
                 GRBLinExpr limit = new GRBLinExpr();
-                limit.addTerm(facilities.get(p).getCapacity(), x[p]);
-                model.addConstr(ptot, GRB.LESS_EQUAL, limit, "S(demand, " +p + ") <= "+ "Capacity[" + p + "]");
+                limit.addTerm(instance.getCapacity()[p], x[p]);
+                model.addConstr(ptot[p], GRB.LESS_EQUAL, limit, "S(demand, " +p + ") <= "+ "Capacity[" + p + "]");
             }
 
             // Y constraints
             for (int w = 0; w < ncustomers; ++w) {
                 GRBLinExpr dtot = new GRBLinExpr();
-                for (int p = 0; p < nFacilities; ++p) {
-                    dtot.addTerm(1, y[w][p]);
+                for (int j = 0; j < candidates[w].length; ++j) {
+                    dtot.addTerm(1, y[w][j]);
                 }
                 model.addConstr(dtot, GRB.EQUAL, 1, "S(y, " + w + ") = 1");
             }
@@ -180,13 +327,23 @@ public class SolverFacilityLocation {
     }
 
     private class StartingPoint {
+        private GRBModel model;
         private GRBVar[] x;
+        private GRBVar[][] y;
+        private int[][] candidates;
 
-        public StartingPoint(GRBVar... x) {
+        public StartingPoint(GRBModel model, GRBVar[] x, GRBVar[][] y, int[][] candidates) {
+            this.model = model;
             this.x = x;
+            this.y = y;
+            this.candidates = candidates;
         }
 
         public void defineGuess() throws GRBException {
+            if (start != null) {
+                defineStart();
+                return;
+            }
             // Guess at the starting point: close the plant with the highest
             // fixed costs; open all others
 
@@ -197,18 +354,42 @@ public class SolverFacilityLocation {
 
             // Now close the plant with the highest fixed cost
             //System.out.println("Initial guess:");
+            double[] setupCost = instance.getSetupCost();
             double maxFixed = -GRB.INFINITY;
             for (int p = 0; p < nFacilities; ++p) {
-                if (facilities.get(p).getSetupCost() > maxFixed) {
-                    maxFixed = facilities.get(p).getSetupCost();
+                if (setupCost[p] > maxFixed) {
+                    maxFixed = setupCost[p];
                 }
             }
             for (int p = 0; p < nFacilities; ++p) {
-                if (facilities.get(p).getSetupCost() == maxFixed) {
+                if (setupCost[p] == maxFixed) {
                     x[p].set(GRB.DoubleAttr.Start, 0.0);
                     break;
                 }
             }
         }
+
+        // Complete start from the assignment, set by arrays (one call per customer). A customer whose facility is
+        // not among its candidates (sparse model) keeps its y undefined, for Gurobi to complete the partial start.
+        private void defineStart() throws GRBException {
+            int[] assignment = start.getAssignment();
+            double[] open = new double[nFacilities];
+            for (int w = 0; w < ncustomers; ++w) {
+                open[assignment[w]] = 1.0;
+            }
+            model.set(GRB.DoubleAttr.Start, x, open);
+            for (int w = 0; w < ncustomers; ++w) {
+                double[] values = new double[candidates[w].length];
+                boolean found = false;
+                for (int j = 0; j < candidates[w].length; ++j) {
+                    if (candidates[w][j] == assignment[w]) {
+                        values[j] = 1.0;
+                        found = true;
+                    }
+                }
+                if (found)
+                    model.set(GRB.DoubleAttr.Start, y[w], values);
+            }
+        }
     }
 }
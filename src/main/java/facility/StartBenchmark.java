@@ -0,0 +1,107 @@
+package facility;
+
+import gurobi.GRB;
+import gurobi.GRBCallback;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import gurobi.GRBModel;
+import input.HandleFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compare the MIP starts of the facility model: the basic guess (all the plants open but the one with the highest
+ * setup cost, no y value) and the regret greedy improved by the local search.
+ *
+ * Usage: java facility.StartBenchmark [-candidates=0] [-time=200] [files...]
+ *
+ * Prints the time to the first incumbent and its objective (the regret start time includes its construction), then
+ * the objective and the gap at the time limit.
+ */
+public class StartBenchmark {
+
+    private static final String[] DEFAULT_INSTANCES = {
+            "assignament/facility/data/fl_200_7",
+            "assignament/facility/data/fl_500_7",
+            "assignament/facility/data/fl_1000_2",
+            "assignament/facility/data/fl_2000_2"
+    };
+
+    private static final long START_IMPROVEMENT_MILLIS = 2000;
+
+    public static void main(String[] args) throws GRBException {
+        int candidatesSize = Integer.parseInt(HandleFile.getOption("candidates", "0", args));
+        double timeLimit = Double.parseDouble(HandleFile.getOption("time",
+                String.valueOf(SolverFacilityLocation.TIME_LIMIT_SECONDS), args));
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("-"))
+                files.add(arg);
+        }
+        if (files.isEmpty())
+            files.addAll(Arrays.asList(DEFAULT_INSTANCES));
+
+        GRBEnv env = new GRBEnv();
+        env.set(GRB.IntParam.OutputFlag, 0);
+
+        System.out.printf("%-12s %-7s %12s %14s %14s %8s%n", "instance", "start", "first(s)", "first obj",
+                "final obj", "gap(%)");
+        for (String file : files) {
+            ParserFile parserFile = new ParserFile("-file=" + file).invoke();
+            String name = new File(file).getName();
+            int k = candidatesSize <= 0 ? parserFile.getNFacilities() : candidatesSize;
+
+            run(name, "basic", new SolverFacilityLocation(parserFile.getInstance()), env, k, timeLimit, 0);
+
+            SolverFacilityLocation solver = new SolverFacilityLocation(parserFile.getInstance());
+            long start = System.currentTimeMillis();
+            solver.setStart(solver.warmStart(START_IMPROVEMENT_MILLIS));
+            run(name, "regret", solver, env, k, timeLimit, (System.currentTimeMillis() - start) / 1000.0);
+        }
+        env.dispose();
+    }
+
+    private static void run(String name, String startName, SolverFacilityLocation solver, GRBEnv env, int k,
+                            double timeLimit, double startSeconds) throws GRBException {
+        FacilityModel facilityModel = solver.buildModel(env, solver.getCandidates(k));
+        GRBModel model = facilityModel.getModel();
+        model.getEnv().set(GRB.DoubleParam.TimeLimit, Math.max(1, timeLimit - startSeconds));
+        FirstIncumbent first = new FirstIncumbent();
+        model.setCallback(first);
+        model.optimize();
+
+        boolean solved = model.get(GRB.IntAttr.SolCount) > 0;
+        System.out.printf("%-12s %-7s %12s %14s %14s %8s%n", name, startName,
+                first.seconds < 0 ? "-" : String.format("%.2f", startSeconds + first.seconds),
+                first.seconds < 0 ? "-" : String.format("%.1f", first.objective),
+                solved ? String.format("%.1f", model.get(GRB.DoubleAttr.ObjVal)) : "none",
+                solved ? String.format("%.3f", 100 * model.get(GRB.DoubleAttr.MIPGap)) : "-");
+        model.dispose();
+    }
+
+    // Run time and objective of the first solution found, the MIP start included
+    private static class FirstIncumbent extends GRBCallback {
+        private double seconds = -1;
+        private double objective;
+
+        @Override
+        protected void callback() {
+            try {
+                if (seconds >= 0)
+                    return;
+                if (where == GRB.CB_MIPSOL) {
+                    seconds = getDoubleInfo(GRB.CB_RUNTIME);
+                    objective = getDoubleInfo(GRB.CB_MIPSOL_OBJ);
+                } else if (where == GRB.CB_MIP && getIntInfo(GRB.CB_MIP_SOLCNT) > 0) {
+                    seconds = getDoubleInfo(GRB.CB_RUNTIME);
+                    objective = getDoubleInfo(GRB.CB_MIP_OBJBST);
+                }
+            } catch (GRBException e) {
+                System.out.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package input;
 
 import java.io.*;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,29 +12,10 @@ public class HandleFile {
 
     public static List<String> getLines(String ...args) throws IOException {
 
-
-        String fileName = null;
-
-        // get the temp file name
-        for (String arg : args) {
-            if (arg.startsWith("-file=")) {
-                fileName = arg.substring(6);
-            }
-        }
-        if (fileName == null)
-            throw new FileNotFoundException("File not defined or not founded") ;
-
         // read the lines out of the file
         List<String> lines = new ArrayList<String>();
 
-        ClassLoader classLoader = HandleFile.class.getClassLoader();
-        BufferedReader input;
-        try {
-
-            input = new BufferedReader(new FileReader(classLoader.getResource(fileName).getFile()));
-        } catch (Exception e) {
-            input = new BufferedReader(new FileReader(new File(fileName)));
-        }
+        BufferedReader input = new BufferedReader(new FileReader(getFile(args)));
         try {
             String line = null;
             while ((line = input.readLine()) != null) {
@@ -46,4 +28,46 @@ public class HandleFile {
         return lines;
 
     }
+
+    /**
+     * Value of a -name=value argument, or the default value when it is not given
+     */
+    public static String getOption(String name, String defaultValue, String ...args) {
+        String prefix = "-" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Resolve the instance file given by the -file= argument, looking first in the classpath and then in the file system
+     */
+    public static File getFile(String ...args) throws IOException {
+
+        String fileName = null;
+
+        // get the temp file name
+        for (String arg : args) {
+            if (arg.startsWith("-file=")) {
+                fileName = arg.substring(6);
+            }
+        }
+        if (fileName == null)
+            throw new FileNotFoundException("File not defined or not founded") ;
+
+        ClassLoader classLoader = HandleFile.class.getClassLoader();
+        URL resource = classLoader.getResource(fileName);
+        if (resource != null) {
+            File file = new File(resource.getFile());
+            if (file.isFile())
+                return file;
+        }
+        File file = new File(fileName);
+        if (!file.isFile())
+            throw new FileNotFoundException("File not defined or not founded: " + fileName);
+        return file;
+    }
 }
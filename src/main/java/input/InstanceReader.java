@@ -0,0 +1,194 @@
+package input;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming tokenizer over a memory-mapped instance file. Numbers are parsed straight from the mapped bytes,
+ * so reading an instance does not allocate a String per line or per token.
+ */
+public class InstanceReader implements Closeable {
+
+    // Powers of ten that are exactly representable as a double (fast path of the double parser)
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Largest number of significant digits that fits a double mantissa without rounding
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private final MappedByteBuffer buffer;
+    private final int limit;
+    private int position;
+
+    public InstanceReader(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("File too large to be mapped: " + file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            limit = (int) size;
+        }
+    }
+
+    /**
+     * Open the instance file given by the -file= argument
+     */
+    public static InstanceReader open(String... args) throws IOException {
+        return new InstanceReader(HandleFile.getFile(args));
+    }
+
+    public boolean hasNext() {
+        skipWhitespaces();
+        return position < limit;
+    }
+
+    public int nextInt() {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new NumberFormatException("Value out of int range: " + value);
+        return (int) value;
+    }
+
+    public long nextLong() {
+        int start = nextTokenStart();
+        int end = tokenEnd(start);
+        position = end;
+
+        int p = start;
+        boolean negative = false;
+        byte b = buffer.get(p);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            p++;
+        }
+        if (p == end)
+            throw new NumberFormatException("For input string: \"" + token(start, end) + "\"");
+
+        long value = 0;
+        for (; p < end; p++) {
+            b = buffer.get(p);
+            if (b < '0' || b > '9' || value > (Long.MAX_VALUE - (b - '0')) / 10)
+                throw new NumberFormatException("For input string: \"" + token(start, end) + "\"");
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    public double nextDouble() {
+        int start = nextTokenStart();
+        int end = tokenEnd(start);
+        position = end;
+
+        int p = start;
+        boolean negative = false;
+        byte b = buffer.get(p);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            p++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; p < end; p++) {
+            b = buffer.get(p);
+            if (b >= '0' && b <= '9') {
+                digits++;
+                if (mantissa == 0 && b == '0') {
+                    if (fraction)
+                        exponent--;
+                    continue;
+                }
+                if (++significantDigits > MAX_EXACT_DIGITS)
+                    return slowDouble(start, end);
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction)
+                    exponent--;
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                return slowDouble(start, end);
+            }
+        }
+        if (digits == 0)
+            return slowDouble(start, end);
+
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return slowDouble(start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    public int[] nextInts(int size) {
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = nextInt();
+        }
+        return values;
+    }
+
+    public double[] nextDoubles(int size) {
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = nextDouble();
+        }
+        return values;
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released by the garbage collector, nothing to do here
+    }
+
+    private void skipWhitespaces() {
+        while (position < limit && buffer.get(position) <= ' ') {
+            position++;
+        }
+    }
+
+    private int nextTokenStart() {
+        skipWhitespaces();
+        if (position >= limit)
+            throw new NoSuchElementException("End of file reached");
+        return position;
+    }
+
+    private int tokenEnd(int start) {
+        int end = start;
+        while (end < limit && buffer.get(end) > ' ') {
+            end++;
+        }
+        return end;
+    }
+
+    // Exponents, very long mantissas and malformed numbers are delegated to the JDK parser
+    private double slowDouble(int start, int end) {
+        return Double.parseDouble(token(start, end));
+    }
+
+    private String token(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,108 @@
+package input;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare the line based parsing (HandleFile.getLines + String.split) with the memory-mapped InstanceReader.
+ *
+ * Usage: java input.ParserBenchmark [-data=assignament] [-runs=5] [files...]
+ * Without files, the largest instance of every assignament/[problem]/data folder is used.
+ */
+public class ParserBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        String dataFolder = "assignament";
+        int runs = 5;
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("-data=")) {
+                dataFolder = arg.substring(6);
+            } else if (arg.startsWith("-runs=")) {
+                runs = Integer.parseInt(arg.substring(6));
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.isEmpty()) {
+            files = largestInstances(new File(dataFolder));
+        }
+
+        System.out.printf("%-40s %12s %14s %12s %14s%n", "file", "lines(ms)", "lines(MB)", "mapped(ms)", "mapped(MB)");
+        for (String file : files) {
+            // Warm up both paths before measuring
+            parseLines(file);
+            parseMapped(file);
+
+            long linesTime = Long.MAX_VALUE, linesBytes = Long.MAX_VALUE;
+            long mappedTime = Long.MAX_VALUE, mappedBytes = Long.MAX_VALUE;
+            double checksum = 0;
+            for (int run = 0; run < runs; run++) {
+                long bytes = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+                long start = System.nanoTime();
+                checksum += parseLines(file);
+                linesTime = Math.min(linesTime, System.nanoTime() - start);
+                linesBytes = Math.min(linesBytes, THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes);
+
+                bytes = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+                start = System.nanoTime();
+                checksum -= parseMapped(file);
+                mappedTime = Math.min(mappedTime, System.nanoTime() - start);
+                mappedBytes = Math.min(mappedBytes, THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes);
+            }
+            if (Math.abs(checksum) > 1e-6 * runs)
+                System.err.println("Parsers disagree on " + file + ": " + checksum);
+
+            System.out.printf("%-40s %12.2f %14.2f %12.2f %14.2f%n", new File(file).getName(),
+                    linesTime / 1e6, linesBytes / 1048576.0, mappedTime / 1e6, mappedBytes / 1048576.0);
+        }
+    }
+
+    private static List<String> largestInstances(File dataFolder) {
+        List<String> files = new ArrayList<>();
+        File[] problems = dataFolder.listFiles();
+        if (problems == null)
+            return files;
+        for (File problem : problems) {
+            File[] instances = new File(problem, "data").listFiles();
+            if (instances == null)
+                continue;
+            File largest = null;
+            for (File instance : instances) {
+                if (instance.isFile() && (largest == null || instance.length() > largest.length()))
+                    largest = instance;
+            }
+            if (largest != null)
+                files.add(largest.getPath());
+        }
+        return files;
+    }
+
+    // Same path used by the parsers before: read all lines, split them and parse every token
+    private static double parseLines(String file) throws IOException {
+        double sum = 0;
+        for (String line : HandleFile.getLines("-file=" + file)) {
+            for (String token : line.trim().split("\\s+")) {
+                if (!token.isEmpty())
+                    sum += Double.parseDouble(token);
+            }
+        }
+        return sum;
+    }
+
+    private static double parseMapped(String file) throws IOException {
+        double sum = 0;
+        try (InstanceReader reader = InstanceReader.open("-file=" + file)) {
+            while (reader.hasNext()) {
+                sum += reader.nextDouble();
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,36 @@
+package spatial;
+
+/**
+ * Distances computed on every access from the coordinate arrays, without any storage
+ */
+final class ComputedDistances implements DistanceProvider {
+
+    private final double[] fromX;
+    private final double[] fromY;
+    private final double[] toX;
+    private final double[] toY;
+
+    ComputedDistances(double[] fromX, double[] fromY, double[] toX, double[] toY) {
+        this.fromX = fromX;
+        this.fromY = fromY;
+        this.toX = toX;
+        this.toY = toY;
+    }
+
+    @Override
+    public int rows() {
+        return fromX.length;
+    }
+
+    @Override
+    public int columns() {
+        return toX.length;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        double dx = fromX[i] - toX[j];
+        double dy = fromY[i] - toY[j];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
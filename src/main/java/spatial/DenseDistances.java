@@ -0,0 +1,42 @@
+package spatial;
+
+/**
+ * All the distances computed up front in a row-major array on the heap, for small instances
+ */
+final class DenseDistances implements DistanceProvider {
+
+    private final int rows;
+    private final int columns;
+    private final double[] matrix;
+
+    DenseDistances(double[] fromX, double[] fromY, double[] toX, double[] toY) {
+        rows = fromX.length;
+        columns = toX.length;
+        matrix = new double[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            double x = fromX[i];
+            double y = fromY[i];
+            int offset = i * columns;
+            for (int j = 0; j < columns; j++) {
+                double dx = x - toX[j];
+                double dy = y - toY[j];
+                matrix[offset + j] = Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public double distance(int i, int j) {
+        return matrix[i * columns + j];
+    }
+}
@@ -0,0 +1,15 @@
+package spatial;
+
+/**
+ * Euclidean distances between the rows and the columns of a set of points, either one point set (rows and columns
+ * are the same points) or two (e.g. customers and facilities). The backends trade memory for time and are chosen by
+ * DistanceProviders. Implementations are safe for concurrent reads.
+ */
+public interface DistanceProvider {
+
+    int rows();
+
+    int columns();
+
+    double distance(int i, int j);
+}
@@ -0,0 +1,39 @@
+package spatial;
+
+/**
+ * Choose the distance backend by instance size and memory budget: a dense heap matrix for small instances,
+ * computation on every access beyond.
+ *
+ * A 2-d Euclidean distance costs a few nanoseconds from the coordinate arrays, less than a cache miss, so a matrix
+ * only pays when it stays in the processor caches: the dense matrix is limited to DENSE_ENTRIES distances (8 MB).
+ * Larger matrices, on or off the heap, and row caches were measured slower than the computation on every access.
+ */
+public final class DistanceProviders {
+
+    static final long DENSE_ENTRIES = 1 << 20;
+
+    private DistanceProviders() {
+    }
+
+    /**
+     * Distances between the points of one set, with a quarter of the maximum heap as memory budget
+     */
+    public static DistanceProvider of(double[] x, double[] y) {
+        return of(x, y, x, y, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Distances from every point (fromX, fromY) to every point (toX, toY), with a quarter of the maximum heap as
+     * memory budget
+     */
+    public static DistanceProvider of(double[] fromX, double[] fromY, double[] toX, double[] toY) {
+        return of(fromX, fromY, toX, toY, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    public static DistanceProvider of(double[] fromX, double[] fromY, double[] toX, double[] toY, long budgetBytes) {
+        long entries = (long) fromX.length * toX.length;
+        if (entries <= DENSE_ENTRIES && entries * Double.BYTES <= budgetBytes)
+            return new DenseDistances(fromX, fromY, toX, toY);
+        return new ComputedDistances(fromX, fromY, toX, toY);
+    }
+}
@@ -0,0 +1,194 @@
+package spatial;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over the bounding box of the points, with about POINTS_PER_CELL points per cell. The points are
+ * bucketed by cell in compressed rows, cellStart[c] to cellStart[c + 1]. Nearest queries scan the rings of cells
+ * around the query cell until no farther ring can hold a nearer point. Faster to build than the k-d tree and as fast
+ * to query on evenly spread points, slower on clustered ones.
+ */
+public class GridIndex implements SpatialIndex {
+
+    private static final int POINTS_PER_CELL = 2;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    // Points in cell order, their coordinates in the same order and the position of every point
+    private final int[] cellStart;
+    private final int[] points;
+    private final double[] cellX;
+    private final double[] cellY;
+    private final int[] position;
+    private final boolean[] active;
+    private final int[] cellActive;
+    private int activeSize;
+
+    public GridIndex(double[] x, double[] y) {
+        int size = x.length;
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if (size == 0) {
+            minX = maxX = minY = maxY = 0;
+        }
+        this.minX = minX;
+        this.minY = minY;
+        double width = maxX - minX;
+        double height = maxY - minY;
+        double cells = Math.max(1, size / POINTS_PER_CELL);
+        double cellSize = Math.sqrt(width * height / cells);
+        // Points on a line: split the longest side only
+        if (cellSize == 0)
+            cellSize = Math.max(width, height) / cells;
+        if (cellSize == 0)
+            cellSize = 1;
+        this.cellSize = cellSize;
+        columns = (int) Math.min(width / cellSize, cells) + 1;
+        rows = (int) Math.min(height / cellSize, cells) + 1;
+
+        int[] cell = new int[size];
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < size; i++) {
+            cell[i] = row(y[i]) * columns + column(x[i]);
+            cellStart[cell[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellActive = new int[columns * rows];
+        points = new int[size];
+        cellX = new double[size];
+        cellY = new double[size];
+        position = new int[size];
+        active = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            int p = cellStart[cell[i]] + cellActive[cell[i]]++;
+            points[p] = i;
+            cellX[p] = x[i];
+            cellY[p] = y[i];
+            position[i] = p;
+            active[p] = true;
+        }
+        activeSize = size;
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
+
+    @Override
+    public int nearest(double qx, double qy, int k, int[] result) {
+        if (k <= 0)
+            return 0;
+        NearestHeap heap = new NearestHeap(k);
+        search(qx, qy, heap);
+        return heap.drain(result);
+    }
+
+    @Override
+    public int nearest(double qx, double qy) {
+        NearestHeap heap = new NearestHeap(1);
+        search(qx, qy, heap);
+        int[] result = new int[1];
+        return heap.drain(result) == 0 ? -1 : result[0];
+    }
+
+    private void search(double qx, double qy, NearestHeap heap) {
+        if (activeSize == 0)
+            return;
+        int column = column(qx);
+        int row = row(qy);
+        int maxRing = Math.max(Math.max(column, columns - 1 - column), Math.max(row, rows - 1 - row));
+        for (int ring = 0; ring <= maxRing; ring++) {
+            int top = row - ring;
+            int bottom = row + ring;
+            for (int c = column - ring; c <= column + ring; c++) {
+                scan(qx, qy, c, top, heap);
+                if (ring > 0)
+                    scan(qx, qy, c, bottom, heap);
+            }
+            for (int r = top + 1; r < bottom; r++) {
+                scan(qx, qy, column - ring, r, heap);
+                scan(qx, qy, column + ring, r, heap);
+            }
+            // The cells beyond this ring are at least ring cells away from the query cell
+            double reach = ring * cellSize;
+            if (heap.isFull() && heap.bound() <= reach * reach)
+                return;
+        }
+    }
+
+    private void scan(double qx, double qy, int column, int row, NearestHeap heap) {
+        if (column < 0 || column >= columns || row < 0 || row >= rows)
+            return;
+        int cell = row * columns + column;
+        if (cellActive[cell] == 0)
+            return;
+        for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+            if (active[p])
+                heap.offer(points[p], distance(qx, qy, p));
+        }
+    }
+
+    @Override
+    public void radius(double qx, double qy, double radius, IntConsumer consumer) {
+        double radius2 = radius * radius;
+        int lastColumn = column(qx + radius);
+        int lastRow = row(qy + radius);
+        for (int r = row(qy - radius); r <= lastRow; r++) {
+            for (int c = column(qx - radius); c <= lastColumn; c++) {
+                int cell = r * columns + c;
+                if (cellActive[cell] == 0)
+                    continue;
+                for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+                    if (active[p] && distance(qx, qy, p) <= radius2)
+                        consumer.accept(points[p]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void remove(int point) {
+        int p = position[point];
+        if (active[p]) {
+            active[p] = false;
+            cellActive[row(cellY[p]) * columns + column(cellX[p])]--;
+            activeSize--;
+        }
+    }
+
+    @Override
+    public void add(int point) {
+        int p = position[point];
+        if (!active[p]) {
+            active[p] = true;
+            cellActive[row(cellY[p]) * columns + column(cellX[p])]++;
+            activeSize++;
+        }
+    }
+
+    @Override
+    public boolean isActive(int point) {
+        return active[position[point]];
+    }
+
+    private double distance(double qx, double qy, int p) {
+        double dx = cellX[p] - qx;
+        double dy = cellY[p] - qy;
+        return dx * dx + dy * dy;
+    }
+}
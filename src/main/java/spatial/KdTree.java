@@ -0,0 +1,237 @@
+package spatial;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Static 2-d tree over primitive coordinate arrays. The tree is implicit: the node of the range [lo, hi) of the
+ * points array holds the median point at (lo + hi) / 2, split on the axis of largest spread, and its children are
+ * the two halves; ranges of at most LEAF_SIZE points are scanned. Every node counts its active points, so removed
+ * points cost nothing to the queries once a whole subtree is empty.
+ */
+public class KdTree implements SpatialIndex {
+
+    private static final int LEAF_SIZE = 8;
+
+    private final double[] x;
+    private final double[] y;
+    // Points in tree order, their coordinates in the same order and the position of every point
+    private final int[] points;
+    private final double[] treeX;
+    private final double[] treeY;
+    private final int[] position;
+    // Split axis of the internal nodes, by position of their median
+    private final boolean[] splitX;
+    private final boolean[] active;
+    // Active points of every subtree: at the median position for internal nodes, at lo for leaves
+    private final int[] activeCount;
+
+    public KdTree(double[] x, double[] y) {
+        this.x = x;
+        this.y = y;
+        int size = x.length;
+        points = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = i;
+        }
+        splitX = new boolean[size];
+        activeCount = new int[size];
+        build(0, size);
+
+        treeX = new double[size];
+        treeY = new double[size];
+        position = new int[size];
+        active = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            treeX[i] = x[points[i]];
+            treeY[i] = y[points[i]];
+            position[points[i]] = i;
+            active[i] = true;
+        }
+    }
+
+    private void build(int lo, int hi) {
+        while (hi - lo > LEAF_SIZE) {
+            double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                double px = x[points[i]];
+                double py = y[points[i]];
+                minX = Math.min(minX, px);
+                maxX = Math.max(maxX, px);
+                minY = Math.min(minY, py);
+                maxY = Math.max(maxY, py);
+            }
+            boolean byX = maxX - minX >= maxY - minY;
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, byX ? x : y);
+            splitX[mid] = byX;
+            activeCount[mid] = hi - lo;
+            build(lo, mid);
+            lo = mid + 1;
+        }
+        if (lo < hi)
+            activeCount[lo] = hi - lo;
+    }
+
+    // Quickselect: reorder points[lo, hi) so that position k holds the point of rank k - lo by coordinate
+    private void select(int lo, int hi, int k, double[] coordinate) {
+        hi--;
+        while (hi > lo) {
+            double pivot = coordinate[points[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coordinate[points[i]] < pivot) {
+                    i++;
+                }
+                while (coordinate[points[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = points[i];
+                    points[i++] = points[j];
+                    points[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int nearest(double qx, double qy, int k, int[] result) {
+        if (k <= 0)
+            return 0;
+        NearestHeap heap = new NearestHeap(k);
+        search(qx, qy, 0, points.length, heap);
+        return heap.drain(result);
+    }
+
+    @Override
+    public int nearest(double qx, double qy) {
+        NearestHeap heap = new NearestHeap(1);
+        search(qx, qy, 0, points.length, heap);
+        int[] result = new int[1];
+        return heap.drain(result) == 0 ? -1 : result[0];
+    }
+
+    private void search(double qx, double qy, int lo, int hi, NearestHeap heap) {
+        while (lo < hi) {
+            if (hi - lo <= LEAF_SIZE) {
+                if (activeCount[lo] == 0)
+                    return;
+                for (int i = lo; i < hi; i++) {
+                    if (active[i])
+                        heap.offer(points[i], distance(qx, qy, i));
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            if (activeCount[mid] == 0)
+                return;
+            double delta = splitX[mid] ? qx - treeX[mid] : qy - treeY[mid];
+            // Nearer half first, then the median, then the farther half only if it can hold a nearer point
+            if (delta < 0) {
+                search(qx, qy, lo, mid, heap);
+            } else {
+                search(qx, qy, mid + 1, hi, heap);
+            }
+            if (active[mid])
+                heap.offer(points[mid], distance(qx, qy, mid));
+            if (delta * delta >= heap.bound())
+                return;
+            if (delta < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+    }
+
+    @Override
+    public void radius(double qx, double qy, double radius, IntConsumer consumer) {
+        radius(qx, qy, radius * radius, 0, points.length, consumer);
+    }
+
+    private void radius(double qx, double qy, double radius2, int lo, int hi, IntConsumer consumer) {
+        while (lo < hi) {
+            if (hi - lo <= LEAF_SIZE) {
+                if (activeCount[lo] == 0)
+                    return;
+                for (int i = lo; i < hi; i++) {
+                    if (active[i] && distance(qx, qy, i) <= radius2)
+                        consumer.accept(points[i]);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            if (activeCount[mid] == 0)
+                return;
+            double delta = splitX[mid] ? qx - treeX[mid] : qy - treeY[mid];
+            if (active[mid] && distance(qx, qy, mid) <= radius2)
+                consumer.accept(points[mid]);
+            boolean crosses = delta * delta <= radius2;
+            if (delta < 0) {
+                if (crosses)
+                    radius(qx, qy, radius2, mid + 1, hi, consumer);
+                hi = mid;
+            } else {
+                if (crosses)
+                    radius(qx, qy, radius2, lo, mid, consumer);
+                lo = mid + 1;
+            }
+        }
+    }
+
+    @Override
+    public void remove(int point) {
+        int i = position[point];
+        if (active[i]) {
+            active[i] = false;
+            updateCounts(i, -1);
+        }
+    }
+
+    @Override
+    public void add(int point) {
+        int i = position[point];
+        if (!active[i]) {
+            active[i] = true;
+            updateCounts(i, 1);
+        }
+    }
+
+    @Override
+    public boolean isActive(int point) {
+        return active[position[point]];
+    }
+
+    // Update the active counts of the nodes on the path from the root to position i
+    private void updateCounts(int i, int delta) {
+        int lo = 0;
+        int hi = points.length;
+        while (hi - lo > LEAF_SIZE) {
+            int mid = (lo + hi) >>> 1;
+            activeCount[mid] += delta;
+            if (i == mid)
+                return;
+            if (i < mid) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        activeCount[lo] += delta;
+    }
+
+    private double distance(double qx, double qy, int i) {
+        double dx = treeX[i] - qx;
+        double dy = treeY[i] - qy;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,77 @@
+package spatial;
+
+/**
+ * Bounded max-heap of the k nearest points found so far, keyed by the squared distance
+ */
+final class NearestHeap {
+
+    private final int[] points;
+    private final double[] distances;
+    private int size;
+
+    NearestHeap(int k) {
+        points = new int[k];
+        distances = new double[k];
+    }
+
+    boolean isFull() {
+        return size == points.length;
+    }
+
+    /**
+     * Squared distance a point must beat to enter the heap
+     */
+    double bound() {
+        return isFull() ? distances[0] : Double.POSITIVE_INFINITY;
+    }
+
+    void offer(int point, double distance) {
+        if (size < points.length) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= distance)
+                    break;
+                points[i] = points[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            points[i] = point;
+            distances[i] = distance;
+        } else if (distance < distances[0]) {
+            siftDown(size, point, distance);
+        }
+    }
+
+    /**
+     * Empty the heap into result, by increasing distance. Returns the number of points.
+     */
+    int drain(int[] result) {
+        int count = size;
+        while (size > 0) {
+            result[size - 1] = points[0];
+            size--;
+            siftDown(size, points[size], distances[size]);
+        }
+        return count;
+    }
+
+    // Put the point at the root and restore the heap of the given size
+    private void siftDown(int size, int point, double distance) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && distances[child + 1] > distances[child])
+                child++;
+            if (distances[child] <= distance)
+                break;
+            points[i] = points[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        points[i] = point;
+        distances[i] = distance;
+    }
+}
@@ -0,0 +1,194 @@
+package spatial;
+
+import input.HandleFile;
+import input.InstanceReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compare the k-d tree and the grid index with a brute force scan on k nearest queries.
+ *
+ * Usage: java spatial.SpatialBenchmark [-k=10] [-queries=2000] [files...]
+ *
+ * TSP instances (tsp_ files) index their nodes and query a sample of them, facility instances index the
+ * facilities and query the customers. Prints the build time, the time per query on all the points and after
+ * removing half of them (e.g. closed facilities), and the number of answers differing from the brute force.
+ */
+public class SpatialBenchmark {
+
+    private static final String[] DEFAULT_INSTANCES = {
+            "assignament/tsp/data/tsp_85900_1",
+            "assignament/facility/data/fl_2000_2",
+            "assignament/facility/data/fl_2000_3"
+    };
+
+    public static void main(String[] args) throws IOException {
+        int k = Integer.parseInt(HandleFile.getOption("k", "10", args));
+        int queriesSize = Integer.parseInt(HandleFile.getOption("queries", "2000", args));
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("-"))
+                files.add(arg);
+        }
+        if (files.isEmpty())
+            files.addAll(Arrays.asList(DEFAULT_INSTANCES));
+
+        System.out.printf("%-12s %8s %8s %-6s %10s %12s %14s %10s%n", "instance", "points", "queries", "index",
+                "build(ms)", "query(us)", "removed(us)", "mismatch");
+        for (String file : files) {
+            double[][] points = new double[4][];
+            read(file, queriesSize, points);
+            String name = new File(file).getName();
+            run(name, "brute", points, k);
+            run(name, "kd", points, k);
+            run(name, "grid", points, k);
+        }
+    }
+
+    // points: the indexed x and y, then the query x and y
+    private static void read(String file, int queriesSize, double[][] points) throws IOException {
+        try (InstanceReader reader = new InstanceReader(new File(file))) {
+            if (new File(file).getName().startsWith("tsp")) {
+                int size = reader.nextInt();
+                double[] x = new double[size];
+                double[] y = new double[size];
+                for (int i = 0; i < size; i++) {
+                    x[i] = reader.nextDouble();
+                    y[i] = reader.nextDouble();
+                }
+                Random random = new Random(1);
+                double[] qx = new double[Math.min(queriesSize, size)];
+                double[] qy = new double[qx.length];
+                for (int q = 0; q < qx.length; q++) {
+                    int i = random.nextInt(size);
+                    qx[q] = x[i];
+                    qy[q] = y[i];
+                }
+                points[0] = x;
+                points[1] = y;
+                points[2] = qx;
+                points[3] = qy;
+            } else {
+                int facilitiesSize = reader.nextInt();
+                int customersSize = reader.nextInt();
+                double[] x = new double[facilitiesSize];
+                double[] y = new double[facilitiesSize];
+                for (int p = 0; p < facilitiesSize; p++) {
+                    reader.nextDouble();
+                    reader.nextDouble();
+                    x[p] = reader.nextDouble();
+                    y[p] = reader.nextDouble();
+                }
+                double[] qx = new double[Math.min(queriesSize, customersSize)];
+                double[] qy = new double[qx.length];
+                for (int w = 0; w < qx.length; w++) {
+                    reader.nextDouble();
+                    qx[w] = reader.nextDouble();
+                    qy[w] = reader.nextDouble();
+                }
+                points[0] = x;
+                points[1] = y;
+                points[2] = qx;
+                points[3] = qy;
+            }
+        }
+    }
+
+    private static void run(String name, String indexName, double[][] points, int k) {
+        double[] x = points[0];
+        double[] y = points[1];
+        double[] qx = points[2];
+        double[] qy = points[3];
+        int[][] expected = new int[qx.length][k];
+        int[][] expectedRemoved = new int[qx.length][k];
+        boolean[] removed = new boolean[x.length];
+        for (int i = 0; i < x.length; i += 2) {
+            removed[i] = true;
+        }
+        for (int q = 0; q < qx.length; q++) {
+            bruteForce(x, y, removed, qx[q], qy[q], k, expectedRemoved[q]);
+        }
+        Arrays.fill(removed, false);
+        for (int q = 0; q < qx.length; q++) {
+            bruteForce(x, y, removed, qx[q], qy[q], k, expected[q]);
+        }
+
+        // Warm up before measuring
+        SpatialIndex index = build(indexName, x, y);
+        query(index, x, y, removed, qx, qy, k, expected);
+
+        long start = System.nanoTime();
+        index = build(indexName, x, y);
+        long buildNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int mismatches = query(index, x, y, removed, qx, qy, k, expected);
+        long queryNanos = System.nanoTime() - start;
+
+        for (int i = 0; i < x.length; i += 2) {
+            removed[i] = true;
+            if (index != null)
+                index.remove(i);
+        }
+        start = System.nanoTime();
+        mismatches += query(index, x, y, removed, qx, qy, k, expectedRemoved);
+        long removedNanos = System.nanoTime() - start;
+
+        System.out.printf("%-12s %8d %8d %-6s %10.1f %12.2f %14.2f %10d%n", name, x.length, qx.length, indexName,
+                buildNanos / 1e6, queryNanos / 1e3 / qx.length, removedNanos / 1e3 / qx.length, mismatches);
+    }
+
+    private static SpatialIndex build(String indexName, double[] x, double[] y) {
+        switch (indexName) {
+            case "kd":
+                return new KdTree(x, y);
+            case "grid":
+                return new GridIndex(x, y);
+            default:
+                return null;
+        }
+    }
+
+    // Queries of the index (brute force when null), returns the number of answers differing from expected
+    private static int query(SpatialIndex index, double[] x, double[] y, boolean[] removed, double[] qx,
+                             double[] qy, int k, int[][] expected) {
+        int mismatches = 0;
+        int[] result = new int[k];
+        for (int q = 0; q < qx.length; q++) {
+            if (index == null) {
+                bruteForce(x, y, removed, qx[q], qy[q], k, result);
+            } else {
+                index.nearest(qx[q], qy[q], k, result);
+            }
+            // Ties can be listed in any order, compare the distances
+            for (int i = 0; i < k; i++) {
+                if (distance(x, y, result[i], qx[q], qy[q]) != distance(x, y, expected[q][i], qx[q], qy[q])) {
+                    mismatches++;
+                    break;
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    private static void bruteForce(double[] x, double[] y, boolean[] removed, double qx, double qy, int k,
+                                   int[] result) {
+        NearestHeap heap = new NearestHeap(k);
+        for (int i = 0; i < x.length; i++) {
+            if (!removed[i])
+                heap.offer(i, distance(x, y, i, qx, qy));
+        }
+        heap.drain(result);
+    }
+
+    private static double distance(double[] x, double[] y, int i, double qx, double qy) {
+        double dx = x[i] - qx;
+        double dy = y[i] - qy;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,33 @@
+package spatial;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Index of points in the plane, given by their coordinate arrays, answering nearest neighbour queries.
+ * Points can be removed and added back (e.g. facilities being closed and opened): the queries only see the
+ * active points. Distances are Euclidean.
+ */
+public interface SpatialIndex {
+
+    /**
+     * Fill result with the k nearest active points of (x, y), by increasing distance. Returns their number,
+     * smaller than k when there are less active points.
+     */
+    int nearest(double x, double y, int k, int[] result);
+
+    /**
+     * Nearest active point of (x, y), or -1 when no point is active
+     */
+    int nearest(double x, double y);
+
+    /**
+     * Call the consumer for every active point within the radius of (x, y), in no particular order
+     */
+    void radius(double x, double y, double radius, IntConsumer consumer);
+
+    void remove(int point);
+
+    void add(int point);
+
+    boolean isActive(int point);
+}
@@ -0,0 +1,67 @@
+package vrp.mip;
+
+import input.HandleFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Size of the sparse VRP models on every vrp_* instance, with the arcs filtered by capacity only and also by the
+ * k nearest customers.
+ *
+ * Usage: java vrp.mip.ArcBenchmark [-arcs=20] [-dir=assignament/vrp/data] [files...]
+ *
+ * Prints the arcs kept and filtered out, the variables of SolverVRP (x, t per truck and u) and of CVRP (one per truck
+ * and arc) against the dense models, and the time to build the arc index.
+ */
+public class ArcBenchmark {
+
+    public static void main(String[] args) {
+        int k = Integer.parseInt(HandleFile.getOption("arcs", "20", args));
+        String dir = HandleFile.getOption("dir", "assignament/vrp/data", args);
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (!arg.startsWith("-"))
+                files.add(arg);
+        }
+        if (files.isEmpty()) {
+            String[] names = new File(dir).list((d, name) -> name.startsWith("vrp_"));
+            if (names == null) {
+                System.err.println("No instance in " + dir);
+                return;
+            }
+            Arrays.sort(names, (a, b) -> Integer.compare(size(a), size(b)) != 0 ? Integer.compare(size(a), size(b))
+                    : a.compareTo(b));
+            for (String name : names) {
+                files.add(new File(dir, name).getPath());
+            }
+        }
+
+        System.out.printf("%-14s %4s %10s %10s %10s %12s %12s %12s %12s %8s%n", "instance", "k", "arcs", "capacity",
+                "neighbours", "vrp dense", "vrp sparse", "cvrp dense", "cvrp sparse", "ms");
+        for (String file : files) {
+            VrpInstance instance = new ParserFile("-file=" + file).invoke().getInstance();
+            String name = new File(file).getName();
+            long n = instance.size();
+            long m = instance.getVehicles();
+            for (int neighbours : k > 0 ? new int[]{0, k} : new int[]{0}) {
+                ArcIndex arcs = new ArcIndex(instance, neighbours, null);
+                System.out.printf("%-14s %4d %10d %10d %10d %12d %12d %12d %12d %8d%n", name, neighbours, arcs.size(),
+                        arcs.getCapacityFiltered(), arcs.getNeighbourFiltered(), (m + 1) * n * n + n - 1,
+                        (m + 1) * arcs.size() + n - 1, m * n * n, m * arcs.size(), arcs.getBuildMillis());
+            }
+        }
+    }
+
+    // Number of nodes in the name vrp_<nodes>_<vehicles>_<id>, 0 if there is none
+    private static int size(String name) {
+        String[] parts = name.split("_");
+        try {
+            return parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package vrp.mip;
+
+import java.util.Arrays;
+
+/**
+ * The arcs a route can use, numbered from 0, for the sparse VRP models.
+ *
+ * An arc (i, j) is left out when it is a self-loop or when i and j are customers whose demands add up to more than
+ * the capacity, since no vehicle can serve both. With k > 0, an arc between two customers is also left out when
+ * neither of them is among the k nearest customers of the other; the arcs from and to the depot are always kept, and
+ * so are the arcs of the given routes, so that a MIP start stays feasible.
+ *
+ * The arcs are numbered by tail then head: the arcs leaving i are out[i], by increasing head, and arc(i, j) is found
+ * by binary search. The arcs entering j are in[j].
+ */
+public final class ArcIndex {
+
+    private final int size;
+    private final int[] tail;
+    private final int[] head;
+    private final int[][] out;
+    private final int[][] in;
+    private final long capacityFiltered;
+    private final long neighbourFiltered;
+    private final long buildMillis;
+
+    /**
+     * Arcs of instance, restricted to the k nearest customers (0 for all of them), keeping the arcs of routes (null
+     * for none)
+     */
+    public ArcIndex(VrpInstance instance, int k, int[][] routes) {
+        long begin = System.currentTimeMillis();
+        size = instance.size();
+        double[] demand = instance.getDemand();
+        double capacity = instance.getCapacity();
+
+        // near[j]: j is a head of the current tail for the neighbourhood
+        boolean[] near = new boolean[size];
+        int[][] nearest = k > 0 ? instance.nearestCustomers(Math.max(1, Math.min(k, size - 2))) : null;
+        int[][] reverse = nearest != null ? reverse(nearest) : null;
+        int[][] required = routes != null ? successors(routes) : null;
+
+        int[][] heads = new int[size][];
+        int[] buffer = new int[size];
+        long byCapacity = 0;
+        long byNeighbours = 0;
+        int arcs = 0;
+        for (int i = 0; i < size; i++) {
+            if (nearest != null && i > 0) {
+                for (int j : nearest[i]) {
+                    near[j] = true;
+                }
+                for (int j : reverse[i]) {
+                    near[j] = true;
+                }
+                if (required != null) {
+                    for (int j : required[i]) {
+                        near[j] = true;
+                    }
+                }
+            }
+            int n = 0;
+            for (int j = 0; j < size; j++) {
+                if (j == i)
+                    continue;
+                if (i > 0 && j > 0) {
+                    if (demand[i] + demand[j] > capacity) {
+                        byCapacity++;
+                        continue;
+                    }
+                    if (nearest != null && !near[j]) {
+                        byNeighbours++;
+                        continue;
+                    }
+                }
+                buffer[n++] = j;
+            }
+            heads[i] = Arrays.copyOf(buffer, n);
+            arcs += n;
+            if (nearest != null && i > 0) {
+                for (int j : nearest[i]) {
+                    near[j] = false;
+                }
+                for (int j : reverse[i]) {
+                    near[j] = false;
+                }
+                if (required != null) {
+                    for (int j : required[i]) {
+                        near[j] = false;
+                    }
+                }
+            }
+        }
+
+        tail = new int[arcs];
+        head = new int[arcs];
+        out = new int[size][];
+        int[] inDegree = new int[size];
+        int a = 0;
+        for (int i = 0; i < size; i++) {
+            out[i] = new int[heads[i].length];
+            for (int p = 0; p < heads[i].length; p++) {
+                tail[a] = i;
+                head[a] = heads[i][p];
+                inDegree[head[a]]++;
+                out[i][p] = a++;
+            }
+        }
+        in = new int[size][];
+        for (int j = 0; j < size; j++) {
+            in[j] = new int[inDegree[j]];
+            inDegree[j] = 0;
+        }
+        for (a = 0; a < arcs; a++) {
+            in[head[a]][inDegree[head[a]]++] = a;
+        }
+        capacityFiltered = byCapacity;
+        neighbourFiltered = byNeighbours;
+        buildMillis = System.currentTimeMillis() - begin;
+    }
+
+    // reverse[j]: the customers having j among their nearest customers
+    private int[][] reverse(int[][] nearest) {
+        int[] count = new int[size];
+        for (int i = 1; i < size; i++) {
+            for (int j : nearest[i]) {
+                count[j]++;
+            }
+        }
+        int[][] reverse = new int[size][];
+        for (int j = 0; j < size; j++) {
+            reverse[j] = new int[count[j]];
+            count[j] = 0;
+        }
+        for (int i = 1; i < size; i++) {
+            for (int j : nearest[i]) {
+                reverse[j][count[j]++] = i;
+            }
+        }
+        return reverse;
+    }
+
+    // successors[i]: the customers before and after customer i on its route, the depot excluded
+    private int[][] successors(int[][] routes) {
+        int[][] successors = new int[size][0];
+        for (int[] route : routes) {
+            for (int p = 0; p < route.length; p++) {
+                int[] next = new int[2];
+                int n = 0;
+                if (p > 0)
+                    next[n++] = route[p - 1];
+                if (p + 1 < route.length)
+                    next[n++] = route[p + 1];
+                successors[route[p]] = Arrays.copyOf(next, n);
+            }
+        }
+        return successors;
+    }
+
+    /**
+     * Number of arcs
+     */
+    public int size() {
+        return tail.length;
+    }
+
+    /**
+     * Number of nodes, the depot included
+     */
+    public int nodes() {
+        return size;
+    }
+
+    public int tail(int a) {
+        return tail[a];
+    }
+
+    public int head(int a) {
+        return head[a];
+    }
+
+    /**
+     * The arcs leaving i, by increasing head
+     */
+    public int[] out(int i) {
+        return out[i];
+    }
+
+    /**
+     * The arcs entering j, by increasing tail
+     */
+    public int[] in(int j) {
+        return in[j];
+    }
+
+    /**
+     * Index of the arc (i, j), -1 if it was left out
+     */
+    public int arc(int i, int j) {
+        int[] arcs = out[i];
+        int low = 0;
+        int high = arcs.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int h = head[arcs[middle]];
+            if (h < j) {
+                low = middle + 1;
+            } else if (h > j) {
+                high = middle - 1;
+            } else {
+                return arcs[middle];
+            }
+        }
+        return -1;
+    }
+
+    public long getCapacityFiltered() {
+        return capacityFiltered;
+    }
+
+    public long getNeighbourFiltered() {
+        return neighbourFiltered;
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    /**
+     * Values of the arcs as a node by node matrix, 0 for the arcs left out
+     */
+    public double[][] toMatrix(double[] values) {
+        double[][] matrix = new double[size][size];
+        for (int a = 0; a < tail.length; a++) {
+            matrix[tail[a]][head[a]] = values[a];
+        }
+        return matrix;
+    }
+
+    @Override
+    public String toString() {
+        return size() + " of " + (long) size * (size - 1) + " arcs, " + capacityFiltered + " over capacity, "
+                + neighbourFiltered + " outside the neighbourhoods, built in " + buildMillis + " ms";
+    }
+}
@@ -14,28 +14,21 @@ g
 import java.io.*;
 import java.util.*;
 import gurobi.*;
+import input.HandleFile;
 
 class CVRP extends GRBCallback {
-    private GRBVar[][][] vars;             // environnement pour le callback
+    private GRBVar[][] vars;             // environnement pour le callback, vars[k][a]: le tour k emprunte l'arc a
+    private ArcIndex arcs;
     double q[];
     int C;
 
-    public CVRP(GRBVar[][][] _vars, double _q[], int _C) {
+    public CVRP(GRBVar[][] _vars, ArcIndex _arcs, double _q[], int _C) {
         vars  = _vars;
+        arcs  = _arcs;
         q     = _q;
         C     = _C;
     }
 
-    // Gurobi propose une telle fonction pour des tableau  1 ou 2 dimensions
-    // mais pour 3 nous devons en crire une
-    double [][][] getSolution(GRBVar[][][] v) throws GRBException {
-        int n = v.length;
-        double r[][][] = new double[n][][];
-        for (int i=0; i<n; i++)
-            r[i] = getSolution(v[i]);
-        return r;
-    }
-
     // Subtour elimination callback.  Whenever a feasible solution is found,
     // find the subtour that contains node 0, and add a subtour elimination
     // constraint if the tour doesn't visit every node.
@@ -44,8 +37,8 @@ class CVRP extends GRBCallback {
         try {
             if (where == GRB.CB_MIPSOL) {
                 // Found an integer feasible solution - does it visit every node?
-                int n = vars.length;
-                int[][] tours = findtours(getSolution(vars));
+                int n = arcs.nodes();
+                int[][] tours = findtours(getSolution(vars), arcs);
                 int m = tours.length;
                 boolean visited[] = new boolean[n];
                 for (int t[]: tours)
@@ -64,10 +57,10 @@ class CVRP extends GRBCallback {
                     GRBLinExpr expr = new GRBLinExpr();
                     for (int i = 0; i < n; i++)
                         if (visited[i])
-                            for (int j = 0; j < n; j++)
-                                if (!visited[j])
+                            for (int a : arcs.out(i))
+                                if (!visited[arcs.head(a)])
                                     for (int k=0; k<m; k++)
-                                        expr.addTerm(1.0, vars[i][j][k]);
+                                        expr.addTerm(1.0, vars[k][a]);
                     addLazy(expr, GRB.GREATER_EQUAL, orphelin/(double)C); // no integer division please
                 }
 //				System.out.println("*** cut "+orphelin+S);
@@ -81,11 +74,11 @@ class CVRP extends GRBCallback {
 
     // retourne un tableau de taille m qui pour chaque tour
     // comporte la liste des sommets visits, avec dpot en premier et dernier
-    protected static int[][] findtours(double[][][] sol)
+    protected static int[][] findtours(double[][] sol, ArcIndex arcs)
     {
         int j;
-        int n = sol.length;
-        int m = sol[0][0].length;
+        int n = arcs.nodes();
+        int m = sol.length;
         // r[k] va contenir les sommets du tour du camion k en partant du depot
         int r[][] = new int[m][];
 
@@ -96,10 +89,13 @@ class CVRP extends GRBCallback {
             int p = 1; //                            -- position dans le tour (indice 0 =depot)
             int i=0;   //                            -- debuter le tour au depot 0
             while (p==1 || i>0) {
-                // cherche l'arc i->j d'tiquette k
-                for (j=0; j<n; j++)
-                    if (sol[i][j][k]>0.5)
+                // cherche l'arc i->j d'tiquette k, retour au depot sinon
+                j = 0;
+                for (int a : arcs.out(i))
+                    if (sol[k][a]>0.5) {
+                        j = arcs.head(a);
                         break;
+                    }
                 tour[p++]=j;
                 i=j; // continuer la recherche sur des arcs sortant de j
             }
@@ -114,15 +110,6 @@ class CVRP extends GRBCallback {
     }
 
 
-    // Euclidean distance between points 'i' and 'j'
-
-    protected static double distance(double[] x,
-                                     double[] y,
-                                     int      i,
-                                     int      j) {
-        return Math.hypot(x[i]-x[j], y[i]-y[j]);
-    }
-
     public static void main(String[] args) throws Exception {
 
 
@@ -135,29 +122,16 @@ class CVRP extends GRBCallback {
 
 
         ParserFile parserFile = new ParserFile(args).invoke();
+        VrpInstance instance = parserFile.getInstance();
 
-        List<Truck> trucks = parserFile.getTrucks();
-        Facility facility = parserFile.getFacility();
-        List<Customer> costumers = parserFile.getCostumers();
-        List<Local> locals = parserFile.getLocals();
-
-        // two manners to generate instances
-        m= trucks.size();
-            n = locals.size();
-            x = new double[n];    // coordonnees des noeuds
-            y = new double[n];
-            q = new double[n];       // demande en chaque noeud
-
-            Random des = new Random(1024); // pour pouvoir reproduire les instances
-            for (int i = 0; i < n; i++) {
-                x[i] = locals.get(i).getX();
-                y[i] = locals.get(i).getY();
-            }
-            for (int i = 1; i <= costumers.size(); i++) {
-                q[i] = costumers.get(i-1).getDemand();
-            }
-            q[0] = 0; // depot has no demand
-            C = trucks.get(0).getCapacity(); // capacity of a vehicle
+        m = instance.getVehicles();
+        n = instance.size();
+        x = instance.getX();    // coordonnees des noeuds
+        y = instance.getY();
+        q = instance.getDemand();       // demande en chaque noeud, 0 au depot
+        C = instance.getCapacity(); // capacity of a vehicle
+        // -arcs=k: arcs between customers only to their k nearest customers (0 for all the arcs within the capacity)
+        int arcNeighbours = Integer.parseInt(HandleFile.getOption("arcs", "0", args));
 
         try {
             GRBEnv   env   = new GRBEnv();
@@ -168,26 +142,21 @@ class CVRP extends GRBCallback {
             model.getEnv().set(GRB.IntParam.DualReductions, 0);
 
 
-            // Create variables
+            // Create variables, only on the arcs of the index: no self-loop, no pair of customers over the capacity
 
-            GRBVar[][][] vars = new GRBVar[n][n][m];
+            long begin = System.currentTimeMillis();
+            ArcIndex arcs = new ArcIndex(instance, arcNeighbours, null);
+            System.err.println("cvrp arcs: " + arcs);
+            GRBVar[][] vars = new GRBVar[m][arcs.size()];
 
-            for (int i = 0; i < n; i++)
-                for (int j = 0; j < n; j++)
-                    for (int k = 0; k < m; k++)
-                        vars[i][j][k] = model.addVar(0.0, 1.0, distance(x, y, i, j),
-                                GRB.BINARY,
-                                "x"+i+"_"+j+"_"+k);
+            for (int a = 0; a < arcs.size(); a++)
+                for (int k = 0; k < m; k++)
+                    vars[k][a] = model.addVar(0.0, 1.0, instance.distance(arcs.tail(a), arcs.head(a)),
+                            GRB.BINARY,
+                            "x"+arcs.tail(a)+"_"+arcs.head(a)+"_"+k);
 
             // Integrate variables
 
-            model.update();
-
-            // Forbid edge from node back to itself
-            for (int k = 0; k < m; k++)
-                for (int i = 0; i < n; i++)
-                    vars[i][i][k].set(GRB.DoubleAttr.UB, 0.0);
-
             model.update();
             // A-Symmetric CVRP
 
@@ -195,27 +164,27 @@ class CVRP extends GRBCallback {
             for (int j = 1; j < n; j++)
                 for (int k = 0; k < m; k++) {
                     GRBLinExpr expr = new GRBLinExpr();
-                    for (int i = 0; i < n; i++) {
-                        expr.addTerm(+1.0, vars[i][j][k]);
-                        expr.addTerm(-1.0, vars[j][i][k]);
-                    }
+                    for (int a : arcs.in(j))
+                        expr.addTerm(+1.0, vars[k][a]);
+                    for (int a : arcs.out(j))
+                        expr.addTerm(-1.0, vars[k][a]);
                     model.addConstr(expr, GRB.EQUAL, 0.0, "conserveVehicle_"+j+"_"+k);
                 }
 
             // out-degree 1 constraints for non-depot
             for (int i = 1; i < n; i++) {
                 GRBLinExpr expr = new GRBLinExpr();
-                for (int j = 0; j < n; j++)
+                for (int a : arcs.out(i))
                     for (int k = 0; k < m; k++)
-                        expr.addTerm(1.0, vars[i][j][k]);
+                        expr.addTerm(1.0, vars[k][a]);
                 model.addConstr(expr, GRB.EQUAL, 1.0, "deg1_"+i);
             }
 
             // out-degree 1 constraint for depot
             for (int k = 0; k < m; k++) {
                 GRBLinExpr expr = new GRBLinExpr();
-                for (int j = 1; j < n; j++)
-                    expr.addTerm(1.0, vars[0][j][k]);
+                for (int a : arcs.out(0))
+                    expr.addTerm(1.0, vars[k][a]);
                 model.addConstr(expr, GRB.EQUAL, 1.0, "depot1_"+k);
             }
 
@@ -223,12 +192,16 @@ class CVRP extends GRBCallback {
             for (int k = 0; k < m; k++) {
                 GRBLinExpr expr = new GRBLinExpr();
                 for (int j = 1; j < n; j++)
-                    for (int i = 0; i < n; i++)
-                        expr.addTerm(q[j], vars[i][j][k]);
+                    for (int a : arcs.in(j))
+                        expr.addTerm(q[j], vars[k][a]);
                 model.addConstr(expr, GRB.LESS_EQUAL, C, "capacity_"+k);
             }
 
-            model.setCallback(new CVRP(vars, q, C));
+            model.update();
+            System.err.println("cvrp model: " + model.get(GRB.IntAttr.NumVars) + " vars instead of " + (long) n * n * m
+                    + ", built in " + (System.currentTimeMillis() - begin) + " ms");
+
+            model.setCallback(new CVRP(vars, arcs, q, C));
             model.optimize();
             model.write("tmp.lp"); // for debugging purposes, but LP will not contain lazy generated constraints
 //           model.computeIIS();
@@ -240,7 +213,8 @@ class CVRP extends GRBCallback {
             // plot "solution.txt" with linespoints
             FileWriter solution = new FileWriter("solution.txt");
             if (model.get(GRB.IntAttr.SolCount) > 0) {
-                int[][] tours = findtours(model.get(GRB.DoubleAttr.X, vars));
+                double[][] values = model.get(GRB.DoubleAttr.X, vars);
+                int[][] tours = findtours(values, arcs);
                 for (int t[]: tours) {
                     for (int i: t)
                         solution.write(x[i]+" "+y[i]+"\n");
@@ -248,10 +222,11 @@ class CVRP extends GRBCallback {
                 }
                 for (int ti = 0; ti < m; ti++) {
                     solution.write("\n" + ti + "\n");
+                    double[][] matrix = arcs.toMatrix(values[ti]);
                     for (int i = 0; i < n; i++) {
                         solution.write("\n");
                         for (int j = 0; j < n; j++) {
-                            solution.write(" " + (int) vars[i][j][ti].get(GRB.DoubleAttr.X));
+                            solution.write(" " + (int) matrix[i][j]);
                         }
                     }
                 }
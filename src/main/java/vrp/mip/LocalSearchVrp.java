@@ -0,0 +1,388 @@
+package vrp.mip;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Granular local search for the capacitated VRP.
+ *
+ * A route is an array of nodes starting and ending at the depot, with the cumulative load at every position, so that
+ * the load of any segment is a difference and every move is evaluated in constant time. A move is only tried for a
+ * customer u and one of its k nearest customers v, and creates the edge (u, v) or an edge next to v:
+ * - relocate and or-opt: the segment of 1 to MAX_SEGMENT customers starting at u goes after v, or reversed before v;
+ * - swap (same route) and cross-exchange (two routes): u and the segment starting at u trade places with the
+ *   neighbour of v and the segments around it;
+ * - 2-opt (same route): the path between u and v is reversed;
+ * - 2-opt* (two routes): the routes trade their tails, joined at (u, v), one of them reversed or not.
+ * The first improving move is applied by rewriting the routes it changes from preallocated buffers. The search stops
+ * at a local optimum or at the time limit.
+ */
+public class LocalSearchVrp {
+
+    private static final int MAX_SEGMENT = 3;
+    private static final double EPSILON = 1e-9;
+
+    private final VrpInstance instance;
+    private final int size;
+    private final double capacity;
+    private final double[] demand;
+    private final Random random;
+    // neighbours[u]: the nearest customers of u
+    private final int[][] neighbours;
+
+    private int routesSize;
+    private int[][] route;
+    private int[] length;
+    // cumulative[r][p]: load of the first p + 1 nodes of route r
+    private double[][] cumulative;
+    private int[] routeOf;
+    private int[] position;
+    private int[] bufferA;
+    private int[] bufferB;
+    private long evaluations;
+    private long moves;
+
+    public LocalSearchVrp(VrpInstance instance, int neighboursSize, long seed) {
+        this.instance = instance;
+        size = instance.size();
+        capacity = instance.getCapacity();
+        demand = instance.getDemand();
+        random = new Random(seed);
+        neighbours = instance.nearestCustomers(Math.max(1, Math.min(neighboursSize, size - 2)));
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    /**
+     * Improve the routes of initial until no move improves them or the time limit expires
+     */
+    public VrpSolution solve(VrpSolution initial, long timeLimitMillis) {
+        long begin = System.currentTimeMillis();
+        long deadline = begin + timeLimitMillis;
+        load(initial.getRoutes());
+        evaluations = 0;
+        moves = 0;
+
+        int[] order = new int[size - 1];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i + 1;
+        }
+        boolean improved = true;
+        search:
+        while (improved) {
+            improved = false;
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            for (int k = 0; k < order.length; k++) {
+                if ((k & 63) == 0 && System.currentTimeMillis() >= deadline)
+                    break search;
+                int u = order[k];
+                for (int v : neighbours[u]) {
+                    if (v != u && improve(u, v)) {
+                        improved = true;
+                        moves++;
+                        break;
+                    }
+                }
+            }
+        }
+
+        VrpSolution solution = new VrpSolution(instance, routes());
+        long millis = Math.max(1, System.currentTimeMillis() - begin);
+        System.err.println("vrp local search: " + initial.getCost() + " -> " + solution.getCost() + ", " + moves
+                + " moves, " + evaluations + " evaluations in " + millis + " ms (" + evaluations * 1000 / millis
+                + "/s)");
+        return solution;
+    }
+
+    private void load(int[][] routes) {
+        routesSize = routes.length;
+        route = new int[routesSize][size + 1];
+        length = new int[routesSize];
+        cumulative = new double[routesSize][size + 1];
+        routeOf = new int[size];
+        position = new int[size];
+        bufferA = new int[size + 1];
+        bufferB = new int[size + 1];
+        for (int r = 0; r < routesSize; r++) {
+            bufferA[0] = 0;
+            System.arraycopy(routes[r], 0, bufferA, 1, routes[r].length);
+            bufferA[routes[r].length + 1] = 0;
+            write(r, bufferA, routes[r].length + 2);
+        }
+    }
+
+    // The routes without the empty ones
+    private int[][] routes() {
+        List<int[]> routes = new ArrayList<>();
+        for (int r = 0; r < routesSize; r++) {
+            if (length[r] > 2) {
+                int[] nodes = new int[length[r] - 2];
+                System.arraycopy(route[r], 1, nodes, 0, nodes.length);
+                routes.add(nodes);
+            }
+        }
+        return routes.toArray(new int[routes.size()][]);
+    }
+
+    private boolean improve(int u, int v) {
+        if (routeOf[u] == routeOf[v])
+            return segmentMoves(u, v) || swaps(u, v) || twoOpt(u, v);
+        return segmentMoves(u, v) || exchanges(u, v) || twoOptStar(u, v);
+    }
+
+    private double d(int i, int j) {
+        return instance.distance(i, j);
+    }
+
+    private double segmentLoad(int r, int from, int to) {
+        return cumulative[r][to] - cumulative[r][from - 1];
+    }
+
+    // Relocate (length 1) and or-opt: the segment starting at u after v, or reversed before v
+    private boolean segmentMoves(int u, int v) {
+        int r1 = routeOf[u];
+        int r2 = routeOf[v];
+        int i = position[u];
+        for (int j = i; j < i + MAX_SEGMENT && j < length[r1] - 1; j++) {
+            if (r1 != r2 && cumulative[r2][length[r2] - 1] + segmentLoad(r1, i, j) > capacity)
+                return false;
+            if (moveSegment(r1, i, j, r2, position[v], false) || moveSegment(r1, i, j, r2, position[v] - 1, true))
+                return true;
+        }
+        return false;
+    }
+
+    // Move positions i..j of r1 between positions q and q + 1 of r2
+    private boolean moveSegment(int r1, int i, int j, int r2, int q, boolean reversed) {
+        if (r1 == r2 && q >= i - 1 && q <= j)
+            return false;
+        evaluations++;
+        int a = route[r1][i - 1];
+        int s = route[r1][i];
+        int e = route[r1][j];
+        int b = route[r1][j + 1];
+        int x = route[r2][q];
+        int y = route[r2][q + 1];
+        double delta = d(a, b) - d(a, s) - d(e, b) - d(x, y) + (reversed ? d(x, e) + d(s, y) : d(x, s) + d(e, y));
+        if (delta > -EPSILON)
+            return false;
+
+        if (r1 == r2) {
+            int n = 0;
+            for (int p = 0; p < length[r1]; p++) {
+                if (p < i || p > j)
+                    bufferA[n++] = route[r1][p];
+                if (p == q)
+                    n = copy(bufferA, n, r1, i, j, reversed);
+            }
+            write(r1, bufferA, n);
+        } else {
+            int n1 = copy(bufferA, 0, r1, 0, i - 1, false);
+            n1 = copy(bufferA, n1, r1, j + 1, length[r1] - 1, false);
+            int n2 = copy(bufferB, 0, r2, 0, q, false);
+            n2 = copy(bufferB, n2, r1, i, j, reversed);
+            n2 = copy(bufferB, n2, r2, q + 1, length[r2] - 1, false);
+            write(r1, bufferA, n1);
+            write(r2, bufferB, n2);
+        }
+        return true;
+    }
+
+    // Same route: u trades places with the node before or after v
+    private boolean swaps(int u, int v) {
+        int r = routeOf[u];
+        int p = position[v];
+        return swap(r, position[u], p - 1) || swap(r, position[u], p + 1);
+    }
+
+    private boolean swap(int r, int i, int j) {
+        if (j < 1 || j > length[r] - 2 || Math.abs(i - j) < 2)
+            return false;
+        evaluations++;
+        int[] nodes = route[r];
+        int u = nodes[i];
+        int w = nodes[j];
+        double delta = d(nodes[i - 1], w) + d(w, nodes[i + 1]) + d(nodes[j - 1], u) + d(u, nodes[j + 1])
+                - d(nodes[i - 1], u) - d(u, nodes[i + 1]) - d(nodes[j - 1], w) - d(w, nodes[j + 1]);
+        if (delta > -EPSILON)
+            return false;
+        nodes[i] = w;
+        nodes[j] = u;
+        refresh(r);
+        return true;
+    }
+
+    // Two routes: the segment starting at u trades places with the segment after v (v then precedes u), the segment
+    // ending at u with the segment before v (u then precedes v)
+    private boolean exchanges(int u, int v) {
+        int r1 = routeOf[u];
+        int r2 = routeOf[v];
+        int i = position[u];
+        int p = position[v];
+        for (int la = 1; la <= MAX_SEGMENT; la++) {
+            for (int lb = 1; lb <= MAX_SEGMENT; lb++) {
+                if (exchange(r1, i, i + la - 1, r2, p + 1, p + lb)
+                        || exchange(r1, i - la + 1, i, r2, p - lb, p - 1))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    // Exchange positions i1..j1 of r1 with positions i2..j2 of r2
+    private boolean exchange(int r1, int i1, int j1, int r2, int i2, int j2) {
+        if (i1 < 1 || j1 > length[r1] - 2 || i2 < 1 || j2 > length[r2] - 2)
+            return false;
+        double loadA = segmentLoad(r1, i1, j1);
+        double loadB = segmentLoad(r2, i2, j2);
+        if (cumulative[r1][length[r1] - 1] - loadA + loadB > capacity
+                || cumulative[r2][length[r2] - 1] - loadB + loadA > capacity)
+            return false;
+        evaluations++;
+        int a1 = route[r1][i1 - 1];
+        int sA = route[r1][i1];
+        int eA = route[r1][j1];
+        int b1 = route[r1][j1 + 1];
+        int a2 = route[r2][i2 - 1];
+        int sB = route[r2][i2];
+        int eB = route[r2][j2];
+        int b2 = route[r2][j2 + 1];
+        double delta = d(a1, sB) + d(eB, b1) + d(a2, sA) + d(eA, b2)
+                - d(a1, sA) - d(eA, b1) - d(a2, sB) - d(eB, b2);
+        if (delta > -EPSILON)
+            return false;
+
+        int n1 = copy(bufferA, 0, r1, 0, i1 - 1, false);
+        n1 = copy(bufferA, n1, r2, i2, j2, false);
+        n1 = copy(bufferA, n1, r1, j1 + 1, length[r1] - 1, false);
+        int n2 = copy(bufferB, 0, r2, 0, i2 - 1, false);
+        n2 = copy(bufferB, n2, r1, i1, j1, false);
+        n2 = copy(bufferB, n2, r2, j2 + 1, length[r2] - 1, false);
+        write(r1, bufferA, n1);
+        write(r2, bufferB, n2);
+        return true;
+    }
+
+    // Same route: reverse the path between u and v, creating (u, v) with either their successors or predecessors
+    private boolean twoOpt(int u, int v) {
+        int r = routeOf[u];
+        int i = Math.min(position[u], position[v]);
+        int j = Math.max(position[u], position[v]);
+        int[] nodes = route[r];
+        evaluations += 2;
+        double delta = d(nodes[i], nodes[j]) + d(nodes[i + 1], nodes[j + 1]) - d(nodes[i], nodes[i + 1])
+                - d(nodes[j], nodes[j + 1]);
+        if (delta < -EPSILON) {
+            reverse(r, i + 1, j);
+            return true;
+        }
+        delta = d(nodes[i - 1], nodes[j - 1]) + d(nodes[i], nodes[j]) - d(nodes[i - 1], nodes[i])
+                - d(nodes[j - 1], nodes[j]);
+        if (delta < -EPSILON) {
+            reverse(r, i, j - 1);
+            return true;
+        }
+        return false;
+    }
+
+    // Two routes: r1 keeps its head up to u and goes on with v and the tail of r2, or with v and the head of r2
+    // backwards; r2 gets what is left
+    private boolean twoOptStar(int u, int v) {
+        int r1 = routeOf[u];
+        int r2 = routeOf[v];
+        int i = position[u];
+        int j = position[v];
+        double load1 = cumulative[r1][length[r1] - 1];
+        double load2 = cumulative[r2][length[r2] - 1];
+        int nu = route[r1][i + 1];
+        int pv = route[r2][j - 1];
+        int nv = route[r2][j + 1];
+
+        if (cumulative[r1][i] + load2 - cumulative[r2][j - 1] <= capacity
+                && cumulative[r2][j - 1] + load1 - cumulative[r1][i] <= capacity) {
+            evaluations++;
+            double delta = d(u, v) + d(pv, nu) - d(u, nu) - d(pv, v);
+            if (delta < -EPSILON) {
+                int n1 = copy(bufferA, 0, r1, 0, i, false);
+                n1 = copy(bufferA, n1, r2, j, length[r2] - 1, false);
+                int n2 = copy(bufferB, 0, r2, 0, j - 1, false);
+                n2 = copy(bufferB, n2, r1, i + 1, length[r1] - 1, false);
+                write(r1, bufferA, n1);
+                write(r2, bufferB, n2);
+                return true;
+            }
+        }
+        if (cumulative[r1][i] + cumulative[r2][j] <= capacity
+                && load1 - cumulative[r1][i] + load2 - cumulative[r2][j] <= capacity) {
+            evaluations++;
+            double delta = d(u, v) + d(nu, nv) - d(u, nu) - d(v, nv);
+            if (delta < -EPSILON) {
+                int n1 = copy(bufferA, 0, r1, 0, i, false);
+                n1 = copy(bufferA, n1, r2, 0, j, true);
+                int n2 = copy(bufferB, 0, r1, i + 1, length[r1] - 1, true);
+                n2 = copy(bufferB, n2, r2, j + 1, length[r2] - 1, false);
+                write(r1, bufferA, n1);
+                write(r2, bufferB, n2);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Append positions from..to of route r to buffer (nothing when from > to), returns the new buffer length
+    private int copy(int[] buffer, int at, int r, int from, int to, boolean reversed) {
+        if (from > to)
+            return at;
+        if (!reversed) {
+            System.arraycopy(route[r], from, buffer, at, to - from + 1);
+            return at + to - from + 1;
+        }
+        for (int p = to; p >= from; p--) {
+            buffer[at++] = route[r][p];
+        }
+        return at;
+    }
+
+    private void reverse(int r, int from, int to) {
+        int[] nodes = route[r];
+        for (; from < to; from++, to--) {
+            int swap = nodes[from];
+            nodes[from] = nodes[to];
+            nodes[to] = swap;
+        }
+        refresh(r);
+    }
+
+    private void write(int r, int[] buffer, int n) {
+        System.arraycopy(buffer, 0, route[r], 0, n);
+        length[r] = n;
+        refresh(r);
+    }
+
+    // Positions and cumulative loads of route r after a change
+    private void refresh(int r) {
+        int[] nodes = route[r];
+        double[] loads = cumulative[r];
+        loads[0] = 0;
+        for (int p = 1; p < length[r]; p++) {
+            int i = nodes[p];
+            loads[p] = loads[p - 1] + demand[i];
+            if (i != 0) {
+                routeOf[i] = r;
+                position[i] = p;
+            }
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package vrp.mip;
 
-import input.HandleFile;
+import input.InstanceReader;
 import lombok.Data;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,48 +12,47 @@ import java.util.List;
 @Data
 class ParserFile {
     private String[] args;
-    private List<Truck> trucks;
-    private Facility facility;
-    private List<Customer> costumers;
-    private List<Local> locals;
+    private VrpInstance instance;
 
     public ParserFile(String... args) {
         this.args = args;
     }
 
     public ParserFile invoke() {
-        List<String> lines = new ArrayList<>();
-
-        try {
-            lines = HandleFile.getLines(args);
+        try (InstanceReader reader = InstanceReader.open(args)) {
+            // The first node is the depot, it has no demand
+            int nLocals = reader.nextInt();
+            int trucksQuantity = reader.nextInt();
+            int trucksCapacity = reader.nextInt();
+            double[] x = new double[nLocals];
+            double[] y = new double[nLocals];
+            double[] demand = new double[nLocals];
+            for (int i = 0; i < nLocals; i++) {
+                demand[i] = reader.nextDouble();
+                x[i] = reader.nextDouble();
+                y[i] = reader.nextDouble();
+            }
+            demand[0] = 0;
+            instance = new VrpInstance(x, y, demand, trucksQuantity, trucksCapacity);
         } catch (IOException e) {
             e.printStackTrace();
         }
-
-        String[] firstLine = lines.get(0).split("\\s+");
-        int trucksQuantity = Integer.parseInt(firstLine[1]);
-        int trucksCapacity = Integer.parseInt(firstLine[2]);
-        trucks = new ArrayList<>();
-        for (Integer i = 0; i < trucksQuantity; i++) {
-            trucks.add(new Truck(i.toString(), trucksCapacity));
-        }
-        int nCostumers = Integer.parseInt(firstLine[0]);
-
-        String[] secondLine = lines.get(1).split("\\s+");
-        costumers = new ArrayList<>();
-        facility = new Facility(0, Double.parseDouble(secondLine[1]), Double.parseDouble(secondLine[2]));
-        locals = new ArrayList<>();
-        locals.add(facility);
-        for (Integer i = 2; i <= nCostumers; i++) {
-            String[] line = lines.get(i).split("\\s+");
-            Integer costumerName = i-1;
-            double positionX = Double.parseDouble(line[1]);
-            double positionY = Double.parseDouble(line[2]);
-            double demand = Double.parseDouble(line[0]);
-            Customer costumer = new Customer(costumerName, positionX, positionY, demand);
-            costumers.add(costumer);
-            locals.add(costumer);
-        }
         return this;
     }
+
+    public List<Truck> getTrucks() {
+        return instance.getTrucks();
+    }
+
+    public Facility getFacility() {
+        return instance.getFacility();
+    }
+
+    public List<Customer> getCostumers() {
+        return instance.getCustomers();
+    }
+
+    public List<Local> getLocals() {
+        return instance.getLocals();
+    }
 }
@@ -0,0 +1,482 @@
+package vrp.mip;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ruin and recreate large neighbourhood search for the capacitated VRP.
+ *
+ * Every iteration removes between MIN_REMOVED and MAX_REMOVED customers with one of four operators picked at random:
+ * - random: any customers;
+ * - radial: a customer and its nearest customers;
+ * - string: strings of up to MAX_STRING consecutive customers, in the routes met around a customer;
+ * - worst: the customers saving the most when removed, drawn with a bias of WORST_POWER towards the first ones.
+ * The removed customers are then inserted back by regret: the customer whose best insertion is the most ahead of
+ * its second best goes first, at its best position. Each position is skipped with probability BLINK_RATE, so that two
+ * recreations of the same ruin differ. A customer may also open a new route; the routes beyond the vehicles cost
+ * routePenalty each, the length of the round trips to every customer, more than any solution.
+ *
+ * The result replaces the current solution of the worker when it is no more than a threshold longer, decreasing
+ * linearly from START_THRESHOLD of the initial cost to 0 at the time limit. Workers run concurrently and share the
+ * best solution through an atomic reference, updated by compare-and-set and logged at every improvement; a worker
+ * that did not improve on it for RESTART_ITERATIONS iterations restarts from it.
+ */
+public class RuinRecreateVrp {
+
+    private static final int MIN_REMOVED = 5;
+    private static final int MAX_REMOVED = 60;
+    private static final int MAX_STRING = 10;
+    private static final double WORST_POWER = 3;
+    private static final double BLINK_RATE = 0.01;
+    private static final double START_THRESHOLD = 0.02;
+    private static final int RESTART_ITERATIONS = 5000;
+    private static final double EPSILON = 1e-9;
+
+    private final VrpInstance instance;
+    private final int size;
+    private final int vehicles;
+    private final double capacity;
+    private final double[] demand;
+    private final int workers;
+    private final long seed;
+    private final int maxRemoved;
+    private final double routePenalty;
+    // neighbours[u]: the nearest customers of u, for the radial and string removals
+    private final int[][] neighbours;
+
+    private final AtomicReference<VrpSolution> best = new AtomicReference<>();
+    private final AtomicLong iterations = new AtomicLong();
+    private final AtomicLong improvements = new AtomicLong();
+    private long begin;
+
+    public RuinRecreateVrp(VrpInstance instance, int workers, long seed) {
+        this.instance = instance;
+        size = instance.size();
+        vehicles = instance.getVehicles();
+        capacity = instance.getCapacity();
+        demand = instance.getDemand();
+        this.workers = Math.max(1, workers);
+        this.seed = seed;
+        maxRemoved = Math.max(1, Math.min(MAX_REMOVED, (size - 1) / 3));
+        double penalty = 0;
+        for (int i = 1; i < size; i++) {
+            penalty += 2 * instance.distance(0, i);
+        }
+        routePenalty = penalty;
+        neighbours = instance.nearestCustomers(Math.max(1, Math.min(maxRemoved, size - 2)));
+    }
+
+    public long getIterations() {
+        return iterations.get();
+    }
+
+    public long getImprovements() {
+        return improvements.get();
+    }
+
+    /**
+     * Improve the initial solution until the time limit expires
+     */
+    public VrpSolution solve(VrpSolution initial, long timeLimitMillis) {
+        begin = System.currentTimeMillis();
+        long deadline = begin + timeLimitMillis;
+        best.set(initial);
+        iterations.set(0);
+        improvements.set(0);
+        if (size < 3)
+            return initial;
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            for (int t = 0; t < workers; t++) {
+                long workerSeed = seed + t;
+                pool.execute(() -> new Worker(workerSeed, initial).run(deadline));
+            }
+            pool.shutdown();
+            pool.awaitTermination(Math.max(1, deadline - System.currentTimeMillis() + 1000), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        VrpSolution solution = best.get();
+        System.err.println("vrp lns: " + iterations.get() + " iterations, " + improvements.get() + " improvements, "
+                + solution.getRoutes().length + " routes, cost " + solution.getCost());
+        return solution;
+    }
+
+    private double objective(double cost, int routesSize) {
+        return cost + routePenalty * Math.max(0, routesSize - vehicles);
+    }
+
+    private double objective(VrpSolution solution) {
+        return objective(solution.getCost(), solution.getRoutes().length);
+    }
+
+    // Replace the shared best by solution unless another worker found better in the meantime
+    private boolean publish(VrpSolution solution) {
+        double value = objective(solution);
+        while (true) {
+            VrpSolution current = best.get();
+            if (value >= objective(current) - EPSILON)
+                return false;
+            if (best.compareAndSet(current, solution)) {
+                improvements.incrementAndGet();
+                System.err.println("vrp lns: cost " + solution.getCost() + ", " + solution.getRoutes().length
+                        + " routes at " + (System.currentTimeMillis() - begin) + " ms");
+                return true;
+            }
+        }
+    }
+
+    // Routes of the customers, the depot excluded
+    private class Routes {
+        private int routesSize;
+        private final int[][] route = new int[size][];
+        private final int[] length = new int[size];
+        private final double[] load = new double[size];
+        private final int[] routeOf = new int[size];
+        private double cost;
+
+        private void copy(Routes other) {
+            routesSize = other.routesSize;
+            for (int r = 0; r < routesSize; r++) {
+                if (route[r] == null)
+                    route[r] = new int[size - 1];
+                System.arraycopy(other.route[r], 0, route[r], 0, other.length[r]);
+                length[r] = other.length[r];
+                load[r] = other.load[r];
+            }
+            System.arraycopy(other.routeOf, 0, routeOf, 0, size);
+            cost = other.cost;
+        }
+
+        private void load(VrpSolution solution) {
+            routesSize = 0;
+            for (int[] customers : solution.getRoutes()) {
+                if (customers.length == 0)
+                    continue;
+                int r = open();
+                for (int i : customers) {
+                    route[r][length[r]++] = i;
+                    load[r] += demand[i];
+                    routeOf[i] = r;
+                }
+            }
+            cost = solution.getCost();
+        }
+
+        private int open() {
+            int r = routesSize++;
+            if (route[r] == null)
+                route[r] = new int[size - 1];
+            length[r] = 0;
+            load[r] = 0;
+            return r;
+        }
+
+        private double objective() {
+            return RuinRecreateVrp.this.objective(cost, routesSize);
+        }
+
+        private int before(int r, int p) {
+            return p == 0 ? 0 : route[r][p - 1];
+        }
+
+        private int after(int r, int p) {
+            return p == length[r] ? 0 : route[r][p];
+        }
+
+        // Drop the removed customers from their routes, then the empty routes
+        private void remove(boolean[] removed) {
+            for (int r = 0; r < routesSize; r++) {
+                int kept = 0;
+                for (int p = 0; p < length[r]; p++) {
+                    int i = route[r][p];
+                    if (removed[i]) {
+                        load[r] -= demand[i];
+                    } else {
+                        route[r][kept++] = i;
+                    }
+                }
+                length[r] = kept;
+            }
+            int kept = 0;
+            for (int r = 0; r < routesSize; r++) {
+                if (length[r] == 0)
+                    continue;
+                if (kept != r) {
+                    int[] swap = route[kept];
+                    route[kept] = route[r];
+                    route[r] = swap;
+                    length[kept] = length[r];
+                    load[kept] = load[r];
+                }
+                for (int p = 0; p < length[kept]; p++) {
+                    routeOf[route[kept][p]] = kept;
+                }
+                kept++;
+            }
+            routesSize = kept;
+        }
+
+        private void insert(int i, int r, int p) {
+            System.arraycopy(route[r], p, route[r], p + 1, length[r] - p);
+            route[r][p] = i;
+            length[r]++;
+            load[r] += demand[i];
+            routeOf[i] = r;
+        }
+
+        private double length() {
+            double total = 0;
+            for (int r = 0; r < routesSize; r++) {
+                int previous = 0;
+                for (int p = 0; p < length[r]; p++) {
+                    total += instance.distance(previous, route[r][p]);
+                    previous = route[r][p];
+                }
+                total += instance.distance(previous, 0);
+            }
+            return total;
+        }
+
+        private VrpSolution toSolution() {
+            int[][] routes = new int[routesSize][];
+            for (int r = 0; r < routesSize; r++) {
+                routes[r] = Arrays.copyOf(route[r], length[r]);
+            }
+            return new VrpSolution(routes, cost);
+        }
+    }
+
+    private class Worker {
+        private final Random random;
+        private final VrpSolution initial;
+        private Routes current = new Routes();
+        private Routes candidate = new Routes();
+        private final boolean[] removed = new boolean[size];
+        private final boolean[] ruined = new boolean[size];
+        private final int[] selected = new int[size];
+        private int selectedSize;
+        private final long[] keys = new long[size - 1];
+        // Best insertion of the i-th removed customer in route r: its cost and position, -1 if it does not fit
+        private final double[][] insertionCost;
+        private final int[][] insertionPosition;
+
+        private Worker(long seed, VrpSolution initial) {
+            random = new Random(seed);
+            this.initial = initial;
+            insertionCost = new double[maxRemoved][size];
+            insertionPosition = new int[maxRemoved][size];
+        }
+
+        private void run(long deadline) {
+            current.load(initial);
+            double startThreshold = START_THRESHOLD * current.cost;
+            long total = Math.max(1, deadline - begin);
+            int stall = 0;
+            long count = 0;
+            long now;
+            while ((now = System.currentTimeMillis()) < deadline) {
+                candidate.copy(current);
+                ruin(candidate);
+                recreate(candidate);
+                candidate.cost = candidate.length();
+                count++;
+
+                double threshold = startThreshold * (deadline - now) / total;
+                double value = candidate.objective();
+                boolean improving = value < objective(best.get()) - EPSILON;
+                VrpSolution solution = improving ? candidate.toSolution() : null;
+                if (value < current.objective() + threshold) {
+                    Routes swap = current;
+                    current = candidate;
+                    candidate = swap;
+                }
+                if (improving && publish(solution)) {
+                    stall = 0;
+                } else if (++stall >= RESTART_ITERATIONS) {
+                    VrpSolution shared = best.get();
+                    if (objective(shared) < current.objective() - EPSILON)
+                        current.load(shared);
+                    stall = 0;
+                }
+            }
+            iterations.addAndGet(count);
+        }
+
+        private void ruin(Routes routes) {
+            int customers = size - 1;
+            int removedSize = MIN_REMOVED >= maxRemoved ? maxRemoved
+                    : MIN_REMOVED + random.nextInt(maxRemoved - MIN_REMOVED + 1);
+            removedSize = Math.min(removedSize, customers);
+            selectedSize = 0;
+            switch (random.nextInt(4)) {
+                case 0:
+                    while (selectedSize < removedSize) {
+                        select(1 + random.nextInt(customers));
+                    }
+                    break;
+                case 1: {
+                    int c = 1 + random.nextInt(customers);
+                    select(c);
+                    for (int t = 0; t < neighbours[c].length && selectedSize < removedSize; t++) {
+                        select(neighbours[c][t]);
+                    }
+                    break;
+                }
+                case 2:
+                    strings(routes, removedSize);
+                    break;
+                default:
+                    worst(routes, removedSize);
+                    break;
+            }
+            routes.remove(removed);
+        }
+
+        private void select(int i) {
+            if (!removed[i]) {
+                removed[i] = true;
+                selected[selectedSize++] = i;
+            }
+        }
+
+        // Around a random customer, remove a string of every route met until enough customers are removed
+        private void strings(Routes routes, int removedSize) {
+            int c = 1 + random.nextInt(size - 1);
+            for (int t = -1; t < neighbours[c].length && selectedSize < removedSize; t++) {
+                int i = t < 0 ? c : neighbours[c][t];
+                int r = routes.routeOf[i];
+                if (ruined[r] || removed[i])
+                    continue;
+                ruined[r] = true;
+                int n = routes.length[r];
+                int stringLength = 1 + random.nextInt(Math.min(MAX_STRING, Math.min(n, removedSize - selectedSize)));
+                int p = 0;
+                while (routes.route[r][p] != i) {
+                    p++;
+                }
+                // The string holds i at a random offset
+                int first = Math.max(0, Math.min(p - random.nextInt(stringLength), n - stringLength));
+                for (int q = first; q < first + stringLength; q++) {
+                    select(routes.route[r][q]);
+                }
+            }
+            Arrays.fill(ruined, 0, routes.routesSize, false);
+            while (selectedSize < removedSize) {
+                select(1 + random.nextInt(size - 1));
+            }
+        }
+
+        // Customers by increasing saving when removed, the saving in the float bits above the customer
+        private void worst(Routes routes, int removedSize) {
+            int n = 0;
+            for (int r = 0; r < routes.routesSize; r++) {
+                for (int p = 0; p < routes.length[r]; p++) {
+                    int previous = routes.before(r, p);
+                    int next = routes.after(r, p + 1);
+                    int i = routes.route[r][p];
+                    double saving = instance.distance(previous, i) + instance.distance(i, next)
+                            - instance.distance(previous, next);
+                    keys[n++] = (long) Float.floatToIntBits((float) Math.max(0, saving)) << 32 | i;
+                }
+            }
+            Arrays.sort(keys, 0, n);
+            while (selectedSize < removedSize) {
+                int k = n - 1 - (int) (Math.pow(random.nextDouble(), WORST_POWER) * n);
+                select((int) keys[k]);
+                System.arraycopy(keys, k + 1, keys, k, n - k - 1);
+                n--;
+            }
+        }
+
+        private void recreate(Routes routes) {
+            int[] pending = selected;
+            int pendingSize = selectedSize;
+            for (int k = 0; k < pendingSize; k++) {
+                for (int r = 0; r < routes.routesSize; r++) {
+                    evaluate(routes, k, pending[k], r);
+                }
+            }
+            while (pendingSize > 0) {
+                int chosen = -1;
+                int chosenRoute = -1;
+                double chosenRegret = -1;
+                double chosenCost = 0;
+                boolean full = routes.routesSize >= vehicles;
+                for (int k = 0; k < pendingSize; k++) {
+                    int i = pending[k];
+                    // A new route is always possible
+                    int first = -1;
+                    double firstCost = 2 * instance.distance(0, i) + (full ? routePenalty : 0);
+                    double secondCost = Double.MAX_VALUE;
+                    for (int r = 0; r < routes.routesSize; r++) {
+                        if (insertionPosition[k][r] < 0)
+                            continue;
+                        double c = insertionCost[k][r];
+                        if (c < firstCost) {
+                            secondCost = firstCost;
+                            firstCost = c;
+                            first = r;
+                        } else if (c < secondCost) {
+                            secondCost = c;
+                        }
+                    }
+                    double regret = secondCost - firstCost;
+                    if (regret > chosenRegret || regret == chosenRegret && firstCost < chosenCost) {
+                        chosen = k;
+                        chosenRoute = first;
+                        chosenRegret = regret;
+                        chosenCost = firstCost;
+                    }
+                }
+
+                int i = pending[chosen];
+                int r = chosenRoute;
+                if (r < 0) {
+                    r = routes.open();
+                    routes.insert(i, r, 0);
+                } else {
+                    routes.insert(i, r, insertionPosition[chosen][r]);
+                }
+                removed[i] = false;
+                pendingSize--;
+                pending[chosen] = pending[pendingSize];
+                System.arraycopy(insertionCost[pendingSize], 0, insertionCost[chosen], 0, routes.routesSize);
+                System.arraycopy(insertionPosition[pendingSize], 0, insertionPosition[chosen], 0, routes.routesSize);
+                for (int k = 0; k < pendingSize; k++) {
+                    evaluate(routes, k, pending[k], r);
+                }
+            }
+            selectedSize = 0;
+        }
+
+        // Cheapest position of customer i in route r, some positions blinked
+        private void evaluate(Routes routes, int k, int i, int r) {
+            insertionPosition[k][r] = -1;
+            if (routes.load[r] + demand[i] > capacity)
+                return;
+            double bestCost = Double.MAX_VALUE;
+            int previous = 0;
+            for (int p = 0; p <= routes.length[r]; p++) {
+                int next = routes.after(r, p);
+                if (random.nextDouble() >= BLINK_RATE) {
+                    double c = instance.distance(previous, i) + instance.distance(i, next)
+                            - instance.distance(previous, next);
+                    if (c < bestCost) {
+                        bestCost = c;
+                        insertionPosition[k][r] = p;
+                    }
+                }
+                previous = next;
+            }
+            insertionCost[k][r] = bestCost;
+        }
+    }
+}
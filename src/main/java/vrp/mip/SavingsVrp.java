@@ -0,0 +1,170 @@
+package vrp.mip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Clarke and Wright savings for the capacitated VRP.
+ *
+ * Every customer starts on a route of its own. Joining the routes ending at i and starting at j saves
+ * s(i, j) = d(0, i) + d(0, j) - d(i, j); the pairs are merged by decreasing saving while both customers are still at
+ * an end of their routes, the routes differ and their loads fit in a vehicle. Only the pairs of a customer and one of
+ * its k nearest customers are considered, the others rarely save anything.
+ *
+ * The savings of a customer are computed in parallel into its own k slots, as long keys holding the float bits of the
+ * saving (monotone for positive floats) above the slot index, then sorted with Arrays.parallelSort. The routes are
+ * tracked by a union-find over the customers, whose root keeps the load, and by the two neighbours of every customer
+ * (0 for the depot): a customer ends its route when one of them is the depot.
+ */
+public class SavingsVrp {
+
+    private final VrpInstance instance;
+    private final int size;
+    private final int neighboursSize;
+    private final int threads;
+
+    // neighbours[i]: the nearest customers of customer i, by increasing distance
+    private int[][] neighbours;
+    private int[] parent;
+    private double[] load;
+    private int[][] links;
+
+    public SavingsVrp(VrpInstance instance, int neighboursSize, int threads) {
+        this.instance = instance;
+        size = instance.size();
+        this.neighboursSize = Math.max(1, Math.min(neighboursSize, size - 2));
+        this.threads = Math.max(1, threads);
+    }
+
+    public VrpSolution solve() {
+        long begin = System.currentTimeMillis();
+        neighbours = instance.nearestCustomers(neighboursSize);
+        long[] keys = savings();
+        Arrays.parallelSort(keys);
+        long built = System.currentTimeMillis();
+
+        parent = new int[size];
+        load = instance.getDemand().clone();
+        links = new int[size][2];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+        double capacity = instance.getCapacity();
+        int merges = 0;
+        for (int k = keys.length - 1; k >= 0 && keys[k] != 0; k--) {
+            int slot = (int) keys[k];
+            int i = slot / neighboursSize + 1;
+            int j = neighbours[i][slot % neighboursSize];
+            int a = find(i);
+            int b = find(j);
+            if (a == b || !isEnd(i) || !isEnd(j) || load[a] + load[b] > capacity)
+                continue;
+            link(i, j);
+            link(j, i);
+            parent[b] = a;
+            load[a] += load[b];
+            merges++;
+        }
+
+        int[][] routes = routes();
+        VrpSolution solution = new VrpSolution(instance, routes);
+        System.err.println("vrp savings: " + keys.length + " savings built in " + (built - begin) + " ms, " + merges
+                + " merges, " + routes.length + " routes for " + instance.getVehicles() + " vehicles, cost "
+                + solution.getCost() + " in " + (System.currentTimeMillis() - begin) + " ms");
+        return solution;
+    }
+
+    // Key of every positive saving of the pair (i, its t-th neighbour j) at slot (i - 1) * k + t, 0 for the others.
+    // A pair listed by both customers is kept by the smaller one.
+    private long[] savings() {
+        long[] keys = new long[(size - 1) * neighboursSize];
+        AtomicInteger next = new AtomicInteger(1);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            tasks.add(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < size) {
+                    for (int s = 0; s < neighboursSize; s++) {
+                        int j = neighbours[i][s];
+                        if (j < i && contains(neighbours[j], i))
+                            continue;
+                        double saving = instance.distance(0, i) + instance.distance(0, j) - instance.distance(i, j);
+                        if (saving > 0) {
+                            int slot = (i - 1) * neighboursSize + s;
+                            keys[slot] = (long) Float.floatToIntBits((float) saving) << 32 | slot;
+                        }
+                    }
+                }
+                return null;
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return keys;
+    }
+
+    private static boolean contains(int[] list, int value) {
+        for (int v : list) {
+            if (v == value)
+                return true;
+        }
+        return false;
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private boolean isEnd(int i) {
+        return links[i][0] == 0 || links[i][1] == 0;
+    }
+
+    // Replace a depot link of i by j
+    private void link(int i, int j) {
+        links[i][links[i][0] == 0 ? 0 : 1] = j;
+    }
+
+    // Walk every route from one of its ends
+    private int[][] routes() {
+        boolean[] visited = new boolean[size];
+        List<int[]> routes = new ArrayList<>();
+        int[] route = new int[size];
+        for (int i = 1; i < size; i++) {
+            if (visited[i] || !isEnd(i))
+                continue;
+            int length = 0;
+            int previous = 0;
+            int current = i;
+            while (current != 0) {
+                visited[current] = true;
+                route[length++] = current;
+                int next = links[current][0] != previous ? links[current][0] : links[current][1];
+                previous = current;
+                current = next;
+            }
+            routes.add(Arrays.copyOf(route, length));
+        }
+        return routes.toArray(new int[routes.size()][]);
+    }
+}
@@ -1,22 +1,87 @@
 package vrp.mip;
 
-import java.util.List;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import input.HandleFile;
 
 /**
  * Created by Leo on 04/12/2016.
  */
 public class Solver {
 
+    private static final long SEED = 1;
+    private static final long IMPROVEMENT_MILLIS = 2000;
+
     public static void main(String[] args) {
 
         ParserFile parserFile = new ParserFile(args).invoke();
+        VrpInstance instance = parserFile.getInstance();
+
+        // -mode=mip (Gurobi model), twoindex (Gurobi model without truck index, capacity cuts), savings (Clarke and
+        // Wright routes), ls (savings improved by the local search) or lns (ruin and recreate from the ls routes), the
+        // last three need no solver license
+        String mode = HandleFile.getOption("mode", "mip", args);
+        // -neighbours=k: savings only between a customer and its k nearest customers
+        int neighbours = Integer.parseInt(HandleFile.getOption("neighbours", "20", args));
+        int threads = Integer.parseInt(HandleFile.getOption("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors()), args));
+        if ("savings".equals(mode)) {
+            VrpSolution solution = new SavingsVrp(instance, neighbours, threads).solve();
+            System.out.println(solution.format(instance.getVehicles(), false));
+            return;
+        }
+        if ("ls".equals(mode)) {
+            VrpSolution solution = new LocalSearchVrp(instance, neighbours, SEED).solve(
+                    new SavingsVrp(instance, neighbours, threads).solve(), IMPROVEMENT_MILLIS);
+            System.out.println(solution.format(instance.getVehicles(), false));
+            return;
+        }
+
+        if ("lns".equals(mode)) {
+            // -workers: searches run at the same time, sharing the best routes
+            int workers = Integer.parseInt(HandleFile.getOption("workers",
+                    String.valueOf(Runtime.getRuntime().availableProcessors()), args));
+            long timeLimitMillis = (long) (1000 * Double.parseDouble(
+                    HandleFile.getOption("time", String.valueOf(SolverVRP.TIME_LIMIT_SECONDS), args)));
+            long begin = System.currentTimeMillis();
+            VrpSolution start = new LocalSearchVrp(instance, neighbours, SEED).solve(
+                    new SavingsVrp(instance, neighbours, threads).solve(), IMPROVEMENT_MILLIS);
+            VrpSolution solution = new RuinRecreateVrp(instance, workers, SEED).solve(start,
+                    Math.max(0, timeLimitMillis - (System.currentTimeMillis() - begin)));
+            System.out.println(solution.format(instance.getVehicles(), false));
+            return;
+        }
 
-        List<Truck> trucks = parserFile.getTrucks();
-        Facility facility = parserFile.getFacility();
-        List<Customer> costumers = parserFile.getCostumers();
-        List<Local> locals = parserFile.getLocals();
+        // -arcs=k: arcs between customers only to their k nearest customers, 0 for all the arcs within the capacity
+        int arcNeighbours = Integer.parseInt(HandleFile.getOption("arcs", "0", args));
+        if ("twoindex".equals(mode)) {
+            long timeLimitMillis = (long) (1000 * Double.parseDouble(
+                    HandleFile.getOption("time", String.valueOf(SolverVRP.TIME_LIMIT_SECONDS), args)));
+            try {
+                long begin = System.currentTimeMillis();
+                TwoIndexCvrp twoIndex = new TwoIndexCvrp(instance, arcNeighbours);
+                if (!"none".equals(HandleFile.getOption("start", "savings", args)))
+                    twoIndex.setStart(new LocalSearchVrp(instance, neighbours, SEED).solve(
+                            new SavingsVrp(instance, neighbours, threads).solve(), IMPROVEMENT_MILLIS));
+                GRBEnv env = new GRBEnv();
+                VrpSolution solution = twoIndex.solve(env,
+                        Math.max(0, timeLimitMillis - (System.currentTimeMillis() - begin)));
+                env.dispose();
+                if (solution != null)
+                    System.out.println(solution.format(instance.getVehicles(), twoIndex.isOptimal()));
+            } catch (GRBException e) {
+                System.out.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+            }
+            return;
+        }
 
-        new SolverVRP(trucks, facility, costumers, locals).solve();
+        SolverVRP solverVRP = new SolverVRP(instance);
+        solverVRP.setArcNeighbours(arcNeighbours);
+        // -start=savings (Clarke and Wright routes improved by the local search, as MIP start) or none
+        if (!"none".equals(HandleFile.getOption("start", "savings", args)))
+            solverVRP.setStart(new LocalSearchVrp(instance, neighbours, SEED).solve(
+                    new SavingsVrp(instance, neighbours, threads).solve(), IMPROVEMENT_MILLIS));
+        solverVRP.solve();
     }
 
 
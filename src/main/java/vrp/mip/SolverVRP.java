@@ -4,6 +4,7 @@ import gurobi.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -14,23 +15,16 @@ import java.util.Optional;
  * Created by Leo on 08/12/2016.
  */
 @Data
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class SolverVRP {
 
-    @NonNull private List<Truck> trucks;
-    @NonNull private Facility facility;
-    @NonNull private List<Customer> customers;
-    @NonNull private List<Local> locals;
+    @NonNull private VrpInstance instance;
+    // MIP start, one route per truck (null: no start)
+    private VrpSolution start;
+    // Arcs between customers only to their k nearest customers (0: all the arcs within the capacity)
+    private int arcNeighbours;
 
-    private static int TIME_LIMIT_SECONDS = 200;
-
-    public Double getDistance(Local i, Local j) {
-        double x1 = i.getX();
-        double y1 = i.getY();
-        double x2 = j.getX();
-        double y2 = j.getY();
-        return Math.sqrt((x1 - x2) * (x1 - x2) + (y1 - y2) * (y1 - y2));
-    }
+    static int TIME_LIMIT_SECONDS = 200;
 
     public void solve() {
         try {
@@ -40,13 +34,24 @@ public class SolverVRP {
             GRBModel model = new GRBModel(env);
             model.set(GRB.StringAttr.ModelName, "vrp");
 
+            long begin = System.currentTimeMillis();
+            ArcIndex arcs = new ArcIndex(instance, arcNeighbours, start != null ? start.getRoutes() : null);
+            System.err.println("vrp arcs: " + arcs);
+
             //Add objectiveExpression
-            Objective objective = new Objective(model).addObjective();
-            GRBVar[][] x = objective.getX();
-            GRBVar[][][] t = objective.getT();
+            Objective objective = new Objective(model, arcs).addObjective();
+            GRBVar[] x = objective.getX();
+            GRBVar[][] t = objective.getT();
             GRBVar[] u = objective.getU();
             //Add constraints
-            new Constraints(model, t, x, u).addConstraints();
+            new Constraints(model, arcs, t, x, u).addConstraints();
+            if (start != null)
+                defineStart(model, arcs, t, x, u);
+            model.update();
+            long dense = (long) (instance.getVehicles() + 1) * instance.size() * instance.size()
+                    + instance.getCustomersSize();
+            System.err.println("vrp model: " + model.get(GRB.IntAttr.NumVars) + " vars instead of " + dense
+                    + ", built in " + (System.currentTimeMillis() - begin) + " ms");
 
 
             //Configure solver
@@ -63,11 +68,10 @@ public class SolverVRP {
        // model.computeIIS(); //Used to debug solution infeasible
         //model.write("VRP.ilp"); //Used to IIS in a file
 
-            printSolution(model, t, x, u);
-            double[][][] vars = model.get(GRB.DoubleAttr.X, t);
-            for (int ti = 0; ti < trucks.size(); ti++) {
+            printSolution(model, arcs, t, x, u);
+            for (int ti = 0; ti < instance.getVehicles(); ti++) {
                 System.out.println("\n\n" + ti);
-                int[] findsubtour = VRPCallBack.findsubtour(vars[ti]);
+                int[] findsubtour = VRPCallBack.findsubtour(arcs.toMatrix(model.get(GRB.DoubleAttr.X, t[ti])));
                 for (int i = 0; i < findsubtour.length; i++) {
                     System.out.print(findsubtour[i] + " ");
                 }
@@ -85,37 +89,42 @@ public class SolverVRP {
         }
     }
 
-    private void printSolution(GRBModel model, GRBVar[][][] t, GRBVar[][] x, GRBVar[] u) throws GRBException {
+    private void printSolution(GRBModel model, ArcIndex arcs, GRBVar[][] t, GRBVar[] x, GRBVar[] u)
+            throws GRBException {
         Tour tour = new Tour();
-        for (int i = 0; i < locals.size(); i++) {
-            for (int j = 0; j < locals.size(); j++) {
-                    for (int ti = 0; ti < trucks.size(); ti++) {
-                        if (t[ti][i][j].get(GRB.DoubleAttr.X) > 0.5) {
-                            if (!tour.getTourByTruck().containsKey(ti)) {
-                                tour.getTourByTruck().put(ti, new ArrayList<>());
-                            }
-                            tour.getTourByTruck().get(ti).add(i+"->"+j);
-                        }
+        double[][] truckValues = new double[instance.getVehicles()][];
+        for (int ti = 0; ti < instance.getVehicles(); ti++) {
+            truckValues[ti] = model.get(GRB.DoubleAttr.X, t[ti]);
+        }
+        for (int a = 0; a < arcs.size(); a++) {
+            for (int ti = 0; ti < instance.getVehicles(); ti++) {
+                if (truckValues[ti][a] > 0.5) {
+                    if (!tour.getTourByTruck().containsKey(ti)) {
+                        tour.getTourByTruck().put(ti, new ArrayList<>());
+                    }
+                    tour.getTourByTruck().get(ti).add(arcs.tail(a) + "->" + arcs.head(a));
                 }
             }
         }
         System.out.println("Trucks");
-        for (int ti = 0; ti < trucks.size(); ti++) {
+        for (int ti = 0; ti < instance.getVehicles(); ti++) {
             System.out.print("\n" + ti);
-            for (int i = 0; i < locals.size(); i++) {
+            double[][] values = arcs.toMatrix(truckValues[ti]);
+            for (int i = 0; i < instance.size(); i++) {
                 System.out.println();
-                for (int j = 0; j < locals.size(); j++) {
-                    Integer v = (int) t[ti][i][j].get(GRB.DoubleAttr.X);
+                for (int j = 0; j < instance.size(); j++) {
+                    Integer v = (int) values[i][j];
                     System.out.print(v + " ");
                 }
             }
         }
 
         System.out.println("\nRoutes");
-        for (int i = 0; i < locals.size(); i++) {
+        double[][] values = arcs.toMatrix(model.get(GRB.DoubleAttr.X, x));
+        for (int i = 0; i < instance.size(); i++) {
             System.out.println();
-            for (int j = 0; j < locals.size(); j++) {
-                Integer v = (int) x[i][j].get(GRB.DoubleAttr.X);
+            for (int j = 0; j < instance.size(); j++) {
+                Integer v = (int) values[i][j];
                 System.out.print(v + " ");
             }
         }
@@ -133,51 +142,70 @@ public class SolverVRP {
 
 
 
+    // Arcs of the routes of start on x and on the t of their truck (the arc index keeps them), loads along the routes
+    // on u. A start with more routes than trucks is not feasible and is left out.
+    private void defineStart(GRBModel model, ArcIndex arcs, GRBVar[][] t, GRBVar[] x, GRBVar[] u)
+            throws GRBException {
+        if (start.getRoutes().length > instance.getVehicles()) {
+            System.err.println("vrp start: " + start.getRoutes().length + " routes for " + instance.getVehicles()
+                    + " trucks, not used");
+            return;
+        }
+        double[] used = new double[arcs.size()];
+        int[][] routes = start.getRoutes();
+        for (int ti = 0; ti < instance.getVehicles(); ti++) {
+            double[] truckArcs = new double[arcs.size()];
+            if (ti < routes.length) {
+                int previous = 0;
+                double routeLoad = 0;
+                for (int i : routes[ti]) {
+                    truckArcs[arcs.arc(previous, i)] = 1.0;
+                    used[arcs.arc(previous, i)] = 1.0;
+                    routeLoad += instance.getDemand()[i];
+                    u[i - 1].set(GRB.DoubleAttr.Start, routeLoad);
+                    previous = i;
+                }
+                truckArcs[arcs.arc(previous, 0)] = 1.0;
+                used[arcs.arc(previous, 0)] = 1.0;
+            }
+            model.set(GRB.DoubleAttr.Start, t[ti], truckArcs);
+        }
+        model.set(GRB.DoubleAttr.Start, x, used);
+    }
+
     @Data
     private class Objective {
         private GRBModel model;
-        private GRBVar[][][] t; // route i->j is used by truck tw
-        private GRBVar[][] x; // route i->j is used
+        private ArcIndex arcs;
+        private GRBVar[][] t; // arc a is used by truck tw
+        private GRBVar[] x; // arc a is used
         private GRBVar[] u; //(shipment for client i)
         private GRBVar[] v; //(shipment for client i)
 
-        public Objective(GRBModel model) {
+        public Objective(GRBModel model, ArcIndex arcs) {
             this.model = model;
+            this.arcs = arcs;
         }
 
         public Objective addObjective() throws GRBException {
 
-            t = new GRBVar[trucks.size()][locals.size()][locals.size()];
-            x = new GRBVar[locals.size()][locals.size()];
-            for (int i = 0; i < locals.size(); ++i) {
-                for (int j = 0; j < locals.size(); j++) {
-                    x[i][j] = model.addVar(0, 1, 1, GRB.BINARY, "x_"+i+"_"+j);
-                    for (int ti = 0; ti < trucks.size(); ti++) {
-                       t[ti][i][j] = model.addVar(0, 1, getDistance(locals.get(i), locals.get(j)), GRB.BINARY, "t_"+i+"_"+j+"_"+ti);
-                    }
+            // Only the arcs of the index: no self-loop, no pair of customers over the capacity
+            t = new GRBVar[instance.getVehicles()][arcs.size()];
+            x = new GRBVar[arcs.size()];
+            for (int a = 0; a < arcs.size(); a++) {
+                int i = arcs.tail(a);
+                int j = arcs.head(a);
+                x[a] = model.addVar(0, 1, 1, GRB.BINARY, "x_"+i+"_"+j);
+                for (int ti = 0; ti < instance.getVehicles(); ti++) {
+                    t[ti][a] = model.addVar(0, 1, instance.distance(i, j), GRB.BINARY, "t_"+i+"_"+j+"_"+ti);
                 }
             }
 
-            u = new GRBVar[customers.size()];
-            for (int i = 0; i < customers.size(); i++) {
-                u[i] = model.addVar(customers.get(i).getDemand(), trucks.get(0).getCapacity(), 1, GRB.CONTINUOUS, "u_"+i);
+            u = new GRBVar[instance.getCustomersSize()];
+            for (int i = 0; i < instance.getCustomersSize(); i++) {
+                u[i] = model.addVar(instance.getDemand()[i + 1], instance.getCapacity(), 1, GRB.CONTINUOUS, "u_"+i);
             }
 
-            u = new GRBVar[customers.size()];
-            for (int i = 0; i < customers.size(); i++) {
-                u[i] = model.addVar(customers.get(i).getDemand(), trucks.get(0).getCapacity(), 1, GRB.CONTINUOUS, "u_"+i);
-            }
-
-            model.update();
-
-            // Forbid edge from node back to itself
-            for (int ti = 0; ti < trucks.size(); ti++)
-                for (int i = 0; i < locals.size(); i++)
-                    t[ti][i][i].set(GRB.DoubleAttr.UB, 0.0);
-
-            for (int i = 0; i < locals.size(); i++)
-                x[i][i].set(GRB.DoubleAttr.UB, 0.0);
-
             model.update();
 
             // The objectiveExpression is to minimize the total fixed and variable costs
@@ -192,50 +220,48 @@ public class SolverVRP {
     private class Constraints {
 
         private GRBModel model;
-        private GRBVar[][][] t; // truck tw is used on route (i,j)
-        private GRBVar[][] x; // route (i->j) is used
+        private ArcIndex arcs;
+        private GRBVar[][] t; // truck tw is used on arc a
+        private GRBVar[] x; // arc a is used
         private GRBVar[] u; //(shipment for client i)
-        private GRBVar[] V; //(shipment for client i)
 
         public void addConstraints() throws GRBException {
 
             // The loading capacity of each vehicle cannot be exceeded
-            for (int ti = 0; ti < trucks.size(); ti++) {
+            for (int ti = 0; ti < instance.getVehicles(); ti++) {
                 GRBLinExpr tot = new GRBLinExpr();
-                for (int i = 1; i <= customers.size(); i++) {
-                    for (int j = 0; j < locals.size(); j++) {
-                        tot.addTerm(customers.get(i-1).getDemand(), t[ti][i][j]);
+                for (int i = 1; i <= instance.getCustomersSize(); i++) {
+                    for (int a : arcs.out(i)) {
+                        tot.addTerm(instance.getDemand()[i], t[ti][a]);
                     }
                 }
-                model.addConstr(tot, GRB.LESS_EQUAL, trucks.get(ti).getCapacity(), "C1_"+ti);
+                model.addConstr(tot, GRB.LESS_EQUAL, instance.getCapacity(), "C1_"+ti);
             }
 
 
             //The route i->j can be traveled by at most one vehicle
-            for (int i = 0; i < locals.size(); i++) {
-                for (int j = 0; j < locals.size(); j++) {
-                    GRBLinExpr totVehicleOnRoute = new GRBLinExpr();
-                    for (int ti = 0; ti < trucks.size(); ti++) {
-                        totVehicleOnRoute.addTerm(1, t[ti][i][j]);
-                    }
-                    model.addConstr(totVehicleOnRoute, GRB.EQUAL, x[i][j], "C2_" + i + "_" + j);
+            for (int a = 0; a < arcs.size(); a++) {
+                GRBLinExpr totVehicleOnRoute = new GRBLinExpr();
+                for (int ti = 0; ti < instance.getVehicles(); ti++) {
+                    totVehicleOnRoute.addTerm(1, t[ti][a]);
                 }
+                model.addConstr(totVehicleOnRoute, GRB.EQUAL, x[a], "C2_" + arcs.tail(a) + "_" + arcs.head(a));
             }
 
             // The customer must be visited excactly once
-            for (int i=1; i <= customers.size(); i++) {
+            for (int i=1; i <= instance.getCustomersSize(); i++) {
                 GRBLinExpr totVisitOncustomer = new GRBLinExpr();
-                for (int j = 0; j < locals.size(); j++) {
-                    totVisitOncustomer.addTerm(1, x[i][j]);
+                for (int a : arcs.out(i)) {
+                    totVisitOncustomer.addTerm(1, x[a]);
                 }
                 model.addConstr(totVisitOncustomer, GRB.EQUAL, 1, "C3_"+i);
             }
 
             // The customer must be visited excactly once
-            for (int j= 1; j <= customers.size(); j++) {
+            for (int j= 1; j <= instance.getCustomersSize(); j++) {
                 GRBLinExpr totVisitOncustomer = new GRBLinExpr();
-                for (int i = 0; i < locals.size(); i++) {
-                    totVisitOncustomer.addTerm(1, x[i][j]);
+                for (int a : arcs.in(j)) {
+                    totVisitOncustomer.addTerm(1, x[a]);
                 }
                 model.addConstr(totVisitOncustomer, GRB.EQUAL, 1, "C4_"+j);
             }
@@ -243,50 +269,53 @@ public class SolverVRP {
 
             //A vehicle must start at facility
             GRBLinExpr totStartVehicle = new GRBLinExpr();
-            for (int j = 1; j <= customers.size(); j++) {
-                totStartVehicle.addTerm(1, x[0][j]);
+            for (int a : arcs.out(0)) {
+                totStartVehicle.addTerm(1, x[a]);
             }
-            model.addConstr(totStartVehicle, GRB.LESS_EQUAL, trucks.size(), "C5");
+            model.addConstr(totStartVehicle, GRB.LESS_EQUAL, instance.getVehicles(), "C5");
 
             //A vehicle must end at facility
             GRBLinExpr totEndVehicle = new GRBLinExpr();
-            for (int i = 1; i <= customers.size(); i++) {
-                totEndVehicle.addTerm(1, x[i][0]);
+            for (int a : arcs.in(0)) {
+                totEndVehicle.addTerm(1, x[a]);
             }
-            model.addConstr(totEndVehicle, GRB.LESS_EQUAL, trucks.size(), "C6");
+            model.addConstr(totEndVehicle, GRB.LESS_EQUAL, instance.getVehicles(), "C6");
 
 
             // A vehicle that reaches a customer must leave the same customer
-            for (int i = 1; i < customers.size(); i++) {
-                for (int ti = 0; ti < trucks.size(); ti++) {
+            for (int i = 1; i < instance.getCustomersSize(); i++) {
+                for (int ti = 0; ti < instance.getVehicles(); ti++) {
                     GRBLinExpr totIn = new GRBLinExpr();
-                    for (int j = 0; j < locals.size(); j++) {
-                        totIn.addTerm(1, t[ti][i][j]);
-                        totIn.addTerm(-1, t[ti][j][i]);
+                    for (int a : arcs.out(i)) {
+                        totIn.addTerm(1, t[ti][a]);
+                    }
+                    for (int a : arcs.in(i)) {
+                        totIn.addTerm(-1, t[ti][a]);
                     }
                     model.addConstr(totIn, GRB.EQUAL, 0, "C8_"+i+"_"+ti);
                 }
             }
 
-            for (int ti = 0; ti < trucks.size(); ti++) {
-                for (int i = 1; i <= customers.size(); i++) {
+            for (int ti = 0; ti < instance.getVehicles(); ti++) {
+                for (int i = 1; i <= instance.getCustomersSize(); i++) {
                     GRBLinExpr exp1 = new GRBLinExpr();
-                    exp1.addTerm(customers.get(i - 1).getDemand() - trucks.get(0).getCapacity(), t[ti][0][i]);
-                    exp1.addConstant(trucks.get(0).getCapacity());
+                    exp1.addTerm(instance.getDemand()[i] - instance.getCapacity(), t[ti][arcs.arc(0, i)]);
+                    exp1.addConstant(instance.getCapacity());
                     model.addConstr(u[i - 1], GRB.LESS_EQUAL, exp1, "C9_" + ti+"_"+i);
                 }
             }
 
-            for (int ti = 0; ti < trucks.size(); ti++) {
-                for (int i = 1; i <= customers.size(); i++) {
-                    for (int j = 1; j <= customers.size(); j++) {
-                        if (i != j) {
-                            GRBLinExpr exp1 = new GRBLinExpr();
-                            exp1.addTerm(1, u[i - 1]);
-                            exp1.addTerm(-1, u[j - 1]);
-                            exp1.addTerm(trucks.get(0).getCapacity(), t[ti][i][j]);
-                            model.addConstr(exp1, GRB.LESS_EQUAL, trucks.get(0).getCapacity() - customers.get(j - 1).getDemand(), "C10_" +ti+"_"+ i + "_" + j);
-                        }
+            // Without the arc (i, j) the constraint follows from the bounds of u
+            for (int ti = 0; ti < instance.getVehicles(); ti++) {
+                for (int a = 0; a < arcs.size(); a++) {
+                    int i = arcs.tail(a);
+                    int j = arcs.head(a);
+                    if (i > 0 && j > 0) {
+                        GRBLinExpr exp1 = new GRBLinExpr();
+                        exp1.addTerm(1, u[i - 1]);
+                        exp1.addTerm(-1, u[j - 1]);
+                        exp1.addTerm(instance.getCapacity(), t[ti][a]);
+                        model.addConstr(exp1, GRB.LESS_EQUAL, instance.getCapacity() - instance.getDemand()[j], "C10_" +ti+"_"+ i + "_" + j);
                     }
                 }
             }
@@ -0,0 +1,12 @@
+package vrp.mip;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class Truck {
+
+    private String name;
+    private Integer capacity;
+}
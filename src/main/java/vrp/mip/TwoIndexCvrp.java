@@ -0,0 +1,459 @@
+package vrp.mip;
+
+import gurobi.GRB;
+import gurobi.GRBCallback;
+import gurobi.GRBEnv;
+import gurobi.GRBException;
+import gurobi.GRBLinExpr;
+import gurobi.GRBModel;
+import gurobi.GRBVar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Two-index formulation of the capacitated VRP, with the rounded capacity inequalities as cuts.
+ *
+ * One variable x_e per edge of the arc index (i < j), binary between customers and in {0, 1, 2} from the depot, 2
+ * being the route serving a single customer; there is no vehicle index, hence no symmetry between the trucks. Every
+ * customer has degree 2 and the depot between 2 ceil(q(V) / C) and twice the vehicles. The rounded capacity
+ * inequalities x(delta(S)) >= 2 ceil(q(S) / C), for the sets S of customers, forbid both the subtours and the
+ * overloaded routes; none is in the model at first:
+ * - at CB_MIPSOL, every set of customers linked by the integer solution that violates its inequality is added as a
+ *   lazy constraint;
+ * - at CB_MIPNODE, the fractional LP solution is separated heuristically: the customers joined by an edge at 1 are
+ *   shrunk into a super-node, then the connected components of the support graph are checked, and from every
+ *   super-node a set is grown greedily by the super-node most connected to it, checking the inequality after every
+ *   step. At most MAX_CUTS violated sets are added as user cuts per call.
+ * By the degree equations, x(delta(S)) = 2 |S| - 2 x(E(S)), so a set is evaluated from the x inside it only.
+ */
+public class TwoIndexCvrp extends GRBCallback {
+
+    private static final double EPSILON = 1e-6;
+    private static final double MIN_VIOLATION = 1e-2;
+    private static final int MAX_CUTS = 50;
+
+    private final VrpInstance instance;
+    private final int size;
+    private final double capacity;
+    private final double[] demand;
+    private final int arcNeighbours;
+
+    private int[] first;
+    private int[] second;
+    // incident[i]: the edges of node i
+    private int[][] incident;
+    private GRBVar[] x;
+    private VrpSolution start;
+
+    private long lazyConstraints;
+    private long userCuts;
+    private double rootBound = Double.NaN;
+    private boolean optimal;
+
+    // Separation buffers, the callback runs on a single thread
+    private int[] parent;
+    private double[] internal;
+    private double[] connection;
+    private boolean[] inSet;
+
+    public TwoIndexCvrp(VrpInstance instance, int arcNeighbours) {
+        this.instance = instance;
+        size = instance.size();
+        capacity = instance.getCapacity();
+        demand = instance.getDemand();
+        this.arcNeighbours = arcNeighbours;
+    }
+
+    public void setStart(VrpSolution start) {
+        this.start = start;
+    }
+
+    public double getRootBound() {
+        return rootBound;
+    }
+
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * Solve within the time limit, returns the routes of the best solution found, null if there is none
+     */
+    public VrpSolution solve(GRBEnv env, long timeLimitMillis) throws GRBException {
+        long begin = System.currentTimeMillis();
+        edges(new ArcIndex(instance, arcNeighbours, start != null ? start.getRoutes() : null));
+        GRBModel model = new GRBModel(env);
+        try {
+            model.set(GRB.StringAttr.ModelName, "cvrp2");
+            x = new GRBVar[first.length];
+            for (int e = 0; e < first.length; e++) {
+                boolean depot = first[e] == 0;
+                x[e] = model.addVar(0, depot ? 2 : 1, instance.distance(first[e], second[e]),
+                        depot ? GRB.INTEGER : GRB.BINARY, "x_" + first[e] + "_" + second[e]);
+            }
+            model.update();
+
+            for (int i = 1; i < size; i++) {
+                GRBLinExpr degree = new GRBLinExpr();
+                for (int e : incident[i]) {
+                    degree.addTerm(1, x[e]);
+                }
+                model.addConstr(degree, GRB.EQUAL, 2, "degree_" + i);
+            }
+            GRBLinExpr depot = new GRBLinExpr();
+            for (int e : incident[0]) {
+                depot.addTerm(1, x[e]);
+            }
+            double total = 0;
+            for (int i = 1; i < size; i++) {
+                total += demand[i];
+            }
+            model.addConstr(depot, GRB.GREATER_EQUAL, 2 * vehiclesFor(total), "depot_min");
+            model.addConstr(depot, GRB.LESS_EQUAL, 2 * instance.getVehicles(), "depot_max");
+            if (start != null)
+                defineStart(model);
+            model.update();
+            long threeIndex = (long) instance.getVehicles() * 2 * first.length;
+            System.err.println("cvrp two-index: " + model.get(GRB.IntAttr.NumVars) + " vars instead of "
+                    + threeIndex + " with a vehicle index, built in " + (System.currentTimeMillis() - begin) + " ms");
+
+            model.getEnv().set(GRB.IntParam.LazyConstraints, 1);
+            model.getEnv().set(GRB.IntParam.PreCrush, 1);
+            model.getEnv().set(GRB.DoubleParam.TimeLimit, Math.max(1, timeLimitMillis) / 1000.0);
+            model.setCallback(this);
+            model.optimize();
+            optimal = model.get(GRB.IntAttr.Status) == GRB.OPTIMAL;
+
+            System.err.println("cvrp two-index: root bound " + rootBound + ", bound "
+                    + model.get(GRB.DoubleAttr.ObjBound) + ", " + lazyConstraints + " lazy constraints, " + userCuts
+                    + " user cuts");
+            if (model.get(GRB.IntAttr.SolCount) == 0)
+                return null;
+            return new VrpSolution(instance, routes(model.get(GRB.DoubleAttr.X, x)));
+        } finally {
+            model.dispose();
+        }
+    }
+
+    // Edges of the arc index, the arcs from the smaller node
+    private void edges(ArcIndex arcs) {
+        int count = 0;
+        for (int a = 0; a < arcs.size(); a++) {
+            if (arcs.tail(a) < arcs.head(a))
+                count++;
+        }
+        first = new int[count];
+        second = new int[count];
+        int[] degree = new int[size];
+        int e = 0;
+        for (int a = 0; a < arcs.size(); a++) {
+            if (arcs.tail(a) < arcs.head(a)) {
+                first[e] = arcs.tail(a);
+                second[e] = arcs.head(a);
+                degree[first[e]]++;
+                degree[second[e]]++;
+                e++;
+            }
+        }
+        incident = new int[size][];
+        for (int i = 0; i < size; i++) {
+            incident[i] = new int[degree[i]];
+            degree[i] = 0;
+        }
+        for (e = 0; e < count; e++) {
+            incident[first[e]][degree[first[e]]++] = e;
+            incident[second[e]][degree[second[e]]++] = e;
+        }
+        parent = new int[size];
+        internal = new double[size];
+        connection = new double[size];
+        inSet = new boolean[size];
+    }
+
+    private int vehiclesFor(double load) {
+        return (int) Math.ceil(load / capacity - EPSILON);
+    }
+
+    // Edges of the routes of start, the route of a single customer uses its depot edge twice. A start with more
+    // routes than vehicles is not feasible and is left out.
+    private void defineStart(GRBModel model) throws GRBException {
+        if (start.getRoutes().length > instance.getVehicles()) {
+            System.err.println("cvrp start: " + start.getRoutes().length + " routes for " + instance.getVehicles()
+                    + " vehicles, not used");
+            return;
+        }
+        double[] values = new double[first.length];
+        for (int[] route : start.getRoutes()) {
+            int previous = 0;
+            for (int i : route) {
+                values[edge(previous, i)]++;
+                previous = i;
+            }
+            values[edge(previous, 0)]++;
+        }
+        model.set(GRB.DoubleAttr.Start, x, values);
+    }
+
+    private int edge(int i, int j) {
+        int a = Math.min(i, j);
+        int b = Math.max(i, j);
+        for (int e : incident[a]) {
+            if (first[e] == a && second[e] == b)
+                return e;
+        }
+        throw new IllegalArgumentException("No edge " + i + " " + j);
+    }
+
+    @Override
+    protected void callback() {
+        try {
+            if (where == GRB.CB_MIPSOL) {
+                for (BitSet set : components(getSolution(x), 0.5)) {
+                    addInequality(set, true);
+                }
+            } else if (where == GRB.CB_MIPNODE && getIntInfo(GRB.CB_MIPNODE_STATUS) == GRB.OPTIMAL) {
+                if (getDoubleInfo(GRB.CB_MIPNODE_NODCNT) == 0)
+                    rootBound = getDoubleInfo(GRB.CB_MIPNODE_OBJBND);
+                for (BitSet set : separate(getNodeRel(x))) {
+                    addInequality(set, false);
+                }
+            }
+        } catch (GRBException e) {
+            System.out.println("Error code: " + e.getErrorCode() + ". " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // x(delta(S)) >= 2 ceil(q(S) / C), as a lazy constraint or as a user cut
+    private void addInequality(BitSet set, boolean lazy) throws GRBException {
+        GRBLinExpr expr = new GRBLinExpr();
+        double load = 0;
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            load += demand[i];
+            for (int e : incident[i]) {
+                int other = first[e] == i ? second[e] : first[e];
+                if (!set.get(other))
+                    expr.addTerm(1, x[e]);
+            }
+        }
+        if (lazy) {
+            addLazy(expr, GRB.GREATER_EQUAL, 2 * vehiclesFor(load));
+            lazyConstraints++;
+        } else {
+            addCut(expr, GRB.GREATER_EQUAL, 2 * vehiclesFor(load));
+            userCuts++;
+        }
+    }
+
+    // Violated sets among the connected components of the customers, joined by the edges above threshold
+    private List<BitSet> components(double[] values, double threshold) {
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+            internal[i] = 0;
+        }
+        for (int e = 0; e < first.length; e++) {
+            if (first[e] > 0 && values[e] > threshold)
+                union(first[e], second[e]);
+        }
+        for (int e = 0; e < first.length; e++) {
+            if (first[e] > 0 && find(first[e]) == find(second[e]))
+                internal[find(first[e])] += values[e];
+        }
+        List<BitSet> violated = new ArrayList<>();
+        BitSet[] sets = new BitSet[size];
+        for (int i = 1; i < size; i++) {
+            int root = find(i);
+            if (sets[root] == null)
+                sets[root] = new BitSet(size);
+            sets[root].set(i);
+        }
+        for (int i = 1; i < size; i++) {
+            if (sets[i] != null && isViolated(sets[i], internal[i]))
+                violated.add(sets[i]);
+        }
+        return violated;
+    }
+
+    private boolean isViolated(BitSet set, double inside) {
+        double load = 0;
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            load += demand[i];
+        }
+        return 2 * set.cardinality() - 2 * inside < 2 * vehiclesFor(load) - MIN_VIOLATION;
+    }
+
+    // Components of the support graph, then greedy growth from every super-node of the edges at 1
+    private List<BitSet> separate(double[] values) {
+        Set<BitSet> found = new HashSet<>();
+        for (BitSet set : components(values, EPSILON)) {
+            if (found.size() < MAX_CUTS)
+                found.add(set);
+        }
+
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+        for (int e = 0; e < first.length; e++) {
+            if (first[e] > 0 && values[e] >= 1 - EPSILON)
+                union(first[e], second[e]);
+        }
+        // Super-nodes: members, load and x inside, adjacency by the fractional edges between them
+        int[] members = new int[size];
+        int[] memberStart = new int[size + 1];
+        double[] load = new double[size];
+        Arrays.fill(internal, 0);
+        for (int i = 1; i < size; i++) {
+            memberStart[find(i) + 1]++;
+            load[find(i)] += demand[i];
+        }
+        for (int i = 0; i < size; i++) {
+            memberStart[i + 1] += memberStart[i];
+        }
+        int[] fill = Arrays.copyOf(memberStart, size);
+        for (int i = 1; i < size; i++) {
+            members[fill[find(i)]++] = i;
+        }
+        List<List<double[]>> adjacency = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            adjacency.add(null);
+        }
+        for (int e = 0; e < first.length; e++) {
+            if (first[e] == 0 || values[e] <= EPSILON)
+                continue;
+            int a = find(first[e]);
+            int b = find(second[e]);
+            if (a == b) {
+                internal[a] += values[e];
+            } else {
+                neighbours(adjacency, a).add(new double[]{b, values[e]});
+                neighbours(adjacency, b).add(new double[]{a, values[e]});
+            }
+        }
+
+        int[] chosen = new int[size];
+        List<Integer> frontier = new ArrayList<>();
+        for (int seed = 1; seed < size && found.size() < MAX_CUTS; seed++) {
+            if (find(seed) != seed)
+                continue;
+            int chosenSize = 0;
+            int customers = 0;
+            double setLoad = 0;
+            double inside = 0;
+            int next = seed;
+            while (next >= 0) {
+                inSet[next] = true;
+                chosen[chosenSize++] = next;
+                customers += memberStart[next + 1] - memberStart[next];
+                setLoad += load[next];
+                inside += internal[next] + connection[next];
+                if (adjacency.get(next) != null) {
+                    for (double[] link : adjacency.get(next)) {
+                        int other = (int) link[0];
+                        if (inSet[other])
+                            continue;
+                        if (connection[other] == 0)
+                            frontier.add(other);
+                        connection[other] += link[1];
+                    }
+                }
+                if (2 * customers - 2 * inside < 2 * vehiclesFor(setLoad) - MIN_VIOLATION) {
+                    BitSet set = new BitSet(size);
+                    for (int c = 0; c < chosenSize; c++) {
+                        for (int m = memberStart[chosen[c]]; m < memberStart[chosen[c] + 1]; m++) {
+                            set.set(members[m]);
+                        }
+                    }
+                    found.add(set);
+                }
+                // The super-node most connected to the set, none when the set is a whole component
+                next = -1;
+                double best = EPSILON;
+                for (int other : frontier) {
+                    if (!inSet[other] && connection[other] > best) {
+                        best = connection[other];
+                        next = other;
+                    }
+                }
+                // A set of every customer only gives back the depot degree constraint
+                if (next >= 0 && customers + memberStart[next + 1] - memberStart[next] >= size - 1)
+                    next = -1;
+            }
+            for (int c = 0; c < chosenSize; c++) {
+                inSet[chosen[c]] = false;
+                connection[chosen[c]] = 0;
+            }
+            for (int other : frontier) {
+                connection[other] = 0;
+            }
+            frontier.clear();
+        }
+        List<BitSet> violated = new ArrayList<>(found);
+        return violated.size() > MAX_CUTS ? violated.subList(0, MAX_CUTS) : violated;
+    }
+
+    private static List<double[]> neighbours(List<List<double[]>> adjacency, int i) {
+        if (adjacency.get(i) == null)
+            adjacency.set(i, new ArrayList<>());
+        return adjacency.get(i);
+    }
+
+    private int find(int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private void union(int i, int j) {
+        parent[find(i)] = find(j);
+    }
+
+    // Routes of an integer solution, from every depot edge not walked yet
+    private int[][] routes(double[] values) {
+        int[][] linked = new int[size][2];
+        int[] degree = new int[size];
+        List<Integer> starts = new ArrayList<>();
+        for (int e = 0; e < first.length; e++) {
+            long uses = Math.round(values[e]);
+            for (int u = 0; u < uses; u++) {
+                if (first[e] == 0) {
+                    starts.add(second[e]);
+                } else {
+                    linked[first[e]][degree[first[e]]++] = second[e];
+                    linked[second[e]][degree[second[e]]++] = first[e];
+                }
+            }
+        }
+        boolean[] visited = new boolean[size];
+        List<int[]> routes = new ArrayList<>();
+        int[] route = new int[size];
+        for (int s : starts) {
+            if (visited[s])
+                continue;
+            int length = 0;
+            int previous = 0;
+            int current = s;
+            while (current != 0 && !visited[current]) {
+                visited[current] = true;
+                route[length++] = current;
+                int next = 0;
+                for (int d = 0; d < degree[current]; d++) {
+                    if (linked[current][d] != previous) {
+                        next = linked[current][d];
+                        break;
+                    }
+                }
+                previous = current;
+                current = next;
+            }
+            routes.add(Arrays.copyOf(route, length));
+        }
+        return routes.toArray(new int[routes.size()][]);
+    }
+}
@@ -0,0 +1,130 @@
+package vrp.mip;
+
+import spatial.DistanceProvider;
+import spatial.DistanceProviders;
+import spatial.KdTree;
+import spatial.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vehicle routing instance as primitive arrays indexed by node, the depot being node 0 with no demand, built by the
+ * parser and shared by the solvers. The arrays are exposed without copy and must not be modified.
+ * The Local, Customer, Facility and Truck objects are only adapters over it.
+ */
+public final class VrpInstance {
+
+    private final double[] x;
+    private final double[] y;
+    private final double[] demand;
+    private final int vehicles;
+    private final int capacity;
+    private final DistanceProvider distances;
+
+    public VrpInstance(double[] x, double[] y, double[] demand, int vehicles, int capacity) {
+        this.x = x;
+        this.y = y;
+        this.demand = demand;
+        this.vehicles = vehicles;
+        this.capacity = capacity;
+        distances = DistanceProviders.of(x, y);
+    }
+
+    /**
+     * Number of nodes, the depot included
+     */
+    public int size() {
+        return x.length;
+    }
+
+    public int getCustomersSize() {
+        return x.length - 1;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getDemand() {
+        return demand;
+    }
+
+    public int getVehicles() {
+        return vehicles;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Euclidean distance between nodes i and j
+     */
+    public double distance(int i, int j) {
+        return distances.distance(i, j);
+    }
+
+    public DistanceProvider getDistances() {
+        return distances;
+    }
+
+    /**
+     * nearest[i]: the k nearest customers of customer i by increasing distance, the depot excluded. With fewer
+     * customers, the last one (or i itself) is repeated to fill the k slots.
+     */
+    public int[][] nearestCustomers(int k) {
+        SpatialIndex index = new KdTree(x, y);
+        index.remove(0);
+        int[][] nearest = new int[size()][];
+        int[] result = new int[k + 1];
+        for (int i = 1; i < size(); i++) {
+            int found = index.nearest(x[i], y[i], k + 1, result);
+            nearest[i] = new int[k];
+            int n = 0;
+            for (int r = 0; r < found && n < k; r++) {
+                if (result[r] != i)
+                    nearest[i][n++] = result[r];
+            }
+            while (n < k) {
+                nearest[i][n] = n == 0 ? i : nearest[i][n - 1];
+                n++;
+            }
+        }
+        return nearest;
+    }
+
+    public Facility getFacility() {
+        return new Facility(0, x[0], y[0]);
+    }
+
+    public List<Customer> getCustomers() {
+        List<Customer> customers = new ArrayList<>(getCustomersSize());
+        for (int i = 1; i < size(); i++) {
+            customers.add(new Customer(i, x[i], y[i], demand[i]));
+        }
+        return customers;
+    }
+
+    /**
+     * The depot then the customers, by node index
+     */
+    public List<Local> getLocals() {
+        List<Local> locals = new ArrayList<>(size());
+        locals.add(getFacility());
+        locals.addAll(getCustomers());
+        return locals;
+    }
+
+    public List<Truck> getTrucks() {
+        List<Truck> trucks = new ArrayList<>(vehicles);
+        for (Integer i = 0; i < vehicles; i++) {
+            trucks.add(new Truck(i.toString(), capacity));
+        }
+        return trucks;
+    }
+}
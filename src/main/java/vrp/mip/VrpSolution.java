@@ -0,0 +1,62 @@
+package vrp.mip;
+
+/**
+ * Routes of the vehicles as node indices, the depot excluded, and their total length, shared by the VRP engines
+ */
+public final class VrpSolution {
+
+    private final int[][] routes;
+    private final double cost;
+
+    public VrpSolution(int[][] routes, double cost) {
+        this.routes = routes;
+        this.cost = cost;
+    }
+
+    public VrpSolution(VrpInstance instance, int[][] routes) {
+        this(routes, cost(instance, routes));
+    }
+
+    public int[][] getRoutes() {
+        return routes;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * Length of the routes, each one leaving and going back to the depot
+     */
+    public static double cost(VrpInstance instance, int[][] routes) {
+        double cost = 0;
+        for (int[] route : routes) {
+            int previous = 0;
+            for (int i : route) {
+                cost += instance.distance(previous, i);
+                previous = i;
+            }
+            cost += instance.distance(previous, 0);
+        }
+        return cost;
+    }
+
+    /**
+     * Output format: the cost and the optimality flag, then the tour of every vehicle from and to the depot, the
+     * vehicles without route staying at the depot
+     */
+    public String format(int vehicles, boolean optimal) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(cost).append(' ').append(optimal ? 1 : 0);
+        for (int v = 0; v < Math.max(vehicles, routes.length); v++) {
+            builder.append('\n').append(0);
+            if (v < routes.length) {
+                for (int i : routes[v]) {
+                    builder.append(' ').append(i);
+                }
+            }
+            builder.append(' ').append(0);
+        }
+        return builder.toString();
+    }
+}